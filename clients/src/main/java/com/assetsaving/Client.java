@@ -1,15 +1,22 @@
 package com.assetsaving;
 
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.webserver.FlowGateway;
 import net.corda.client.rpc.CordaRPCClient;
 import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.client.rpc.GracefulReconnect;
+import net.corda.client.rpc.RPCException;
 import net.corda.core.identity.CordaX500Name;
 import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
 import net.corda.core.node.NodeInfo;
+import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.utilities.NetworkHostAndPort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import static net.corda.core.utilities.NetworkHostAndPort.parse;
 
@@ -17,20 +24,48 @@ import static net.corda.core.utilities.NetworkHostAndPort.parse;
  * Connects to a Corda node via RPC and performs RPC operations on the node.
  *
  * The RPC connection is configured using command line arguments.
+ *
+ * With "issue &lt;request key&gt; &lt;customer&gt; &lt;start date&gt; &lt;accumulation&gt;" after them, it issues an
+ * asset saving under a client ID derived from the request key, the same way the webserver does.
+ * Running it again with the same key prints the transaction of the first run instead of issuing
+ * another saving, and a run that loses the connection reattaches to its flow once reconnected.
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
     public static void main(String[] args) {
         // Create an RPC connection to the node.
-        if (args.length != 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password>");
+        if (args.length != 3 && !(args.length == 8 && args[3].equals(FlowGateway.ISSUE))) {
+            throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password> "
+                    + "[issue <request key> <customer> <start date> <accumulation>]");
+        }
         final NetworkHostAndPort nodeAddress = parse(args[0]);
         final String rpcUsername = args[1];
         final String rpcPassword = args[2];
         final CordaRPCClient client = new CordaRPCClient(nodeAddress);
-        final CordaRPCConnection clientConnection = client.start(rpcUsername, rpcPassword);
+        final CordaRPCConnection clientConnection = client.start(rpcUsername, rpcPassword, new GracefulReconnect());
         final CordaRPCOps proxy = clientConnection.getProxy();
 
+        if (args.length == 8) {
+            boolean issued = false;
+            try {
+                SignedTransaction stx = issue(proxy, args[4], args[5], args[6], Long.parseLong(args[7]));
+                logger.info("Issued in transaction {}", stx.getId());
+                issued = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while issuing for request key {}", args[4], e);
+            } catch (ExecutionException e) {
+                logger.error("Could not issue for request key {}", args[4], e.getCause());
+            } finally {
+                clientConnection.close();
+            }
+            if (!issued) {
+                System.exit(1);
+            }
+            return;
+        }
+
         // Interact with the node.
         // Example #1, here we print the nodes on the network.
         final List<NodeInfo> nodes = proxy.networkMapSnapshot();
@@ -46,4 +81,26 @@ public class Client {
         clientConnection.close();
 
     }
+
+    private static SignedTransaction issue(CordaRPCOps proxy, String requestKey, String customer, String startDate,
+                                           long accumulation) throws ExecutionException, InterruptedException {
+        String clientId = FlowGateway.clientId(FlowGateway.ISSUE, requestKey);
+        // A known client ID gets the handle of the flow already started with it, finished or not.
+        FlowHandle<SignedTransaction> handle = proxy.startFlowDynamicWithClientId(clientId,
+                IssueFlow.InitiatorFlow.class, customer, startDate, accumulation);
+        while (true) {
+            try {
+                return handle.getReturnValue().get();
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof RPCException)) {
+                    throw e;
+                }
+                logger.warn("Lost the connection while waiting for {}, reattaching", clientId);
+                handle = proxy.reattachFlowWithClientId(clientId);
+                if (handle == null) {
+                    throw new IllegalStateException("The node no longer knows client ID " + clientId);
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.assetsaving.webserver;
+
+import com.assetsaving.states.AssetSavingState;
+
+import java.util.UUID;
+
+/**
+ * The JSON body of one pushed AssetSavingState update.
+ */
+public class AssetSavingEvent {
+
+    public static final String PRODUCED = "produced";
+    public static final String CONSUMED = "consumed";
+
+    private final String status;
+    private final UUID linearId;
+    private final String bank;
+    // Epoch milliseconds.
+    private final long startDate;
+    // Minor units of the currency.
+    private final long accumulation;
+    private final long balance;
+    private final String currency;
+
+    AssetSavingEvent(String status, AssetSavingState state) {
+        this.status = status;
+        this.linearId = state.getLinearId().getId();
+        this.bank = state.getBank().getName().toString();
+        this.startDate = state.getStartDate().getTime();
+        this.accumulation = state.getAccumulation().getQuantity();
+        this.balance = state.getBalance().getQuantity();
+        this.currency = state.getAccumulation().getToken().getCurrencyCode();
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public UUID getLinearId() {
+        return linearId;
+    }
+
+    public String getBank() {
+        return bank;
+    }
+
+    public long getStartDate() {
+        return startDate;
+    }
+
+    public long getAccumulation() {
+        return accumulation;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+}
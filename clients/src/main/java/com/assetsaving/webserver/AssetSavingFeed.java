@@ -0,0 +1,241 @@
+package com.assetsaving.webserver;
+
+import com.assetsaving.states.AssetSavingState;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.flows.AccountInfoByKey;
+import com.r3.corda.lib.accounts.workflows.flows.AccountInfoByName;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.node.services.Vault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pushes AssetSavingState vault updates to Server-Sent Events subscribers.
+ *
+ * All subscribers share the single vault track of NodeRPCConnection. Each subscriber has its own
+ * bounded queue that keeps only the latest update per linearId, so a slow browser delays its own
+ * events but cannot grow the heap. When the queue overflows the oldest updates are dropped and the
+ * subscriber receives an "overflow" event telling it to reload.
+ */
+@Component
+public class AssetSavingFeed {
+
+    // Pending updates held for one subscriber before the oldest are dropped.
+    static final int MAX_PENDING_PER_SUBSCRIBER = 256;
+    // Customer keys remembered with the account they belong to.
+    static final int MAX_CACHED_KEYS = 10_000;
+    static final long SUBSCRIBER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    static final int SENDER_THREADS = 4;
+
+    private final static Logger logger = LoggerFactory.getLogger(AssetSavingFeed.class);
+
+    private final NodeRPCConnection rpc;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Matches updates against the subscribers, off the RPC client's threads.
+    private final ExecutorService fanout = Executors.newSingleThreadExecutor(daemon("asset-saving-feed"));
+    // Writes to the subscribers' connections.
+    private final ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS, daemon("asset-saving-feed-sender"));
+    private final Map<PublicKey, UUID> accountsByKey = new LinkedHashMap<PublicKey, UUID>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PublicKey, UUID> eldest) {
+            return size() > MAX_CACHED_KEYS;
+        }
+    };
+    private Subscription subscription;
+
+    public AssetSavingFeed(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void start() {
+        subscription = rpc.assetSavingUpdates().subscribe(
+                update -> fanout.execute(() -> publish(update)),
+                error -> logger.error("AssetSaving vault track failed", error));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        fanout.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    /**
+     * Registers a subscriber. Both filters are optional: bank is the X500 name of the bank, and
+     * account the name of a customer account.
+     */
+    public SseEmitter subscribe(CordaX500Name bank, String account) throws ExecutionException, InterruptedException {
+        Set<UUID> accountIds = null;
+        if (account != null) {
+            accountIds = new HashSet<>();
+            List<StateAndRef<AccountInfo>> accounts = rpc.call(ops -> ops.startFlowDynamic(AccountInfoByName.class, account))
+                    .getReturnValue().get();
+            for (StateAndRef<AccountInfo> accountInfo : accounts) {
+                accountIds.add(accountInfo.getState().getData().getIdentifier().getId());
+            }
+        }
+
+        SseEmitter emitter = new SseEmitter(SUBSCRIBER_TIMEOUT_MILLIS);
+        Subscriber subscriber = new Subscriber(emitter, bank, accountIds);
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        return emitter;
+    }
+
+    private void publish(Vault.Update<AssetSavingState> update) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        // Consumed first, so that the produced state of an update replaces its consumed one.
+        for (StateAndRef<AssetSavingState> consumed : update.getConsumed()) {
+            offer(AssetSavingEvent.CONSUMED, consumed.getState().getData());
+        }
+        for (StateAndRef<AssetSavingState> produced : update.getProduced()) {
+            offer(AssetSavingEvent.PRODUCED, produced.getState().getData());
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.scheduleDrain();
+        }
+    }
+
+    private void offer(String status, AssetSavingState state) {
+        AssetSavingEvent event = null;
+        for (Subscriber subscriber : subscribers) {
+            if (matches(subscriber, state)) {
+                if (event == null) {
+                    event = new AssetSavingEvent(status, state);
+                }
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private boolean matches(Subscriber subscriber, AssetSavingState state) {
+        if (subscriber.bank != null && !subscriber.bank.equals(state.getBank().getName())) {
+            return false;
+        }
+        return subscriber.accountIds == null
+                || subscriber.accountIds.contains(accountOf(state.getCustomer().getOwningKey()));
+    }
+
+    private UUID accountOf(PublicKey customerKey) {
+        synchronized (accountsByKey) {
+            UUID cached = accountsByKey.get(customerKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        try {
+            StateAndRef<AccountInfo> account = rpc.call(ops -> ops.startFlowDynamic(AccountInfoByKey.class, customerKey))
+                    .getReturnValue().get();
+            if (account == null) {
+                return null;
+            }
+            UUID id = account.getState().getData().getIdentifier().getId();
+            synchronized (accountsByKey) {
+                accountsByKey.put(customerKey, id);
+            }
+            return id;
+        } catch (ExecutionException | InterruptedException e) {
+            logger.warn("Could not resolve the account of a customer key", e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final CordaX500Name bank;
+        private final Set<UUID> accountIds;
+        // Latest pending event per linearId, oldest first.
+        private final LinkedHashMap<UUID, AssetSavingEvent> pending = new LinkedHashMap<>();
+        private boolean overflowed = false;
+        private boolean draining = false;
+
+        private Subscriber(SseEmitter emitter, CordaX500Name bank, Set<UUID> accountIds) {
+            this.emitter = emitter;
+            this.bank = bank;
+            this.accountIds = accountIds;
+        }
+
+        private synchronized void offer(AssetSavingEvent event) {
+            // Re-inserting moves a conflated linearId to the back of the queue.
+            pending.remove(event.getLinearId());
+            pending.put(event.getLinearId(), event);
+            if (pending.size() > MAX_PENDING_PER_SUBSCRIBER) {
+                Iterator<UUID> oldest = pending.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                overflowed = true;
+            }
+        }
+
+        private synchronized void scheduleDrain() {
+            if (draining || pending.isEmpty()) {
+                return;
+            }
+            draining = true;
+            senders.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                List<AssetSavingEvent> events;
+                boolean dropped;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    events = new ArrayList<>(pending.values());
+                    pending.clear();
+                    dropped = overflowed;
+                    overflowed = false;
+                }
+                try {
+                    if (dropped) {
+                        emitter.send(SseEmitter.event().name("overflow").data("Some updates were dropped, please reload."));
+                    }
+                    for (AssetSavingEvent event : events) {
+                        emitter.send(SseEmitter.event().name("update").data(event, MediaType.APPLICATION_JSON));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The browser went away; forget the subscriber.
+                    subscribers.remove(this);
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
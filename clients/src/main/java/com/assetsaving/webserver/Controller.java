@@ -1,11 +1,31 @@
 package com.assetsaving.webserver;
 
+import com.assetsaving.flows.CancelFlow;
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.TransferFlow;
+import com.assetsaving.flows.UpdateFlow;
+import com.assetsaving.flows.utilities.AccumulationTotal;
+import com.assetsaving.flows.utilities.AggregateAccumulationFlow;
+import com.assetsaving.flows.utilities.FlowMetricsFlow;
+import com.assetsaving.flows.utilities.FlowStepMetric;
+import com.assetsaving.flows.utilities.PortfolioSummaryFlow;
+import com.assetsaving.flows.utilities.PortfolioTotal;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
 import net.corda.core.messaging.CordaRPCOps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Define your API endpoints here.
@@ -13,15 +33,242 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 @RequestMapping("/") // The paths for HTTP requests are relative to this base path.
 public class Controller {
+    private final NodeRPCConnection rpc;
     private final CordaRPCOps proxy;
+    private final AssetSavingFeed feed;
+    private final FlowGateway flows;
     private final static Logger logger = LoggerFactory.getLogger(Controller.class);
 
-    public Controller(NodeRPCConnection rpc) {
+    // How long a request for a flow result waits before it answers with the running status.
+    private static final long RESULT_TIMEOUT_MILLIS = 30_000;
+    // The header carrying the caller's key for retrying a flow start safely.
+    private static final String REQUEST_KEY = "Idempotency-Key";
+
+    public Controller(NodeRPCConnection rpc, AssetSavingFeed feed, FlowGateway flows) {
+        this.rpc = rpc;
         this.proxy = rpc.proxy;
+        this.feed = feed;
+        this.flows = flows;
     }
 
     @GetMapping(value = "/templateendpoint", produces = "text/plain")
     private String templateendpoint() {
         return "Define an endpoint here.";
     }
-}
\ No newline at end of file
+
+    /**
+     * Server-Sent Events stream of AssetSavingState updates, optionally filtered by bank X500 name
+     * and by customer account name.
+     */
+    @GetMapping(value = "/assetsavings/updates", produces = "text/event-stream")
+    private SseEmitter assetSavingUpdates(@RequestParam(value = "bank", required = false) String bank,
+                                          @RequestParam(value = "account", required = false) String account)
+            throws ExecutionException, InterruptedException {
+        return feed.subscribe(bank == null ? null : CordaX500Name.parse(bank), account);
+    }
+
+    /**
+     * Whether each configured node answers over RPC.
+     */
+    @GetMapping(value = "/rpc/health", produces = "application/json")
+    private Map<String, Boolean> rpcHealth() {
+        return rpc.health();
+    }
+
+    /**
+     * Connection pool utilisation per node.
+     */
+    @GetMapping(value = "/rpc/metrics", produces = "application/json")
+    private Map<String, Map<String, Object>> rpcMetrics() {
+        return rpc.metrics();
+    }
+
+    /**
+     * Time spent in each ProgressTracker step of the initiator flows on a node, the default node
+     * unless one is named. The same timers are on the node's JMX under com.assetsaving:type=FlowStep.
+     */
+    @GetMapping(value = "/metrics/flows", produces = "application/json")
+    private List<FlowStepMetric> flowMetrics(@RequestParam(value = "node", required = false) String node) {
+        return node == null ? rpc.call(Controller::flowMetrics) : rpc.call(node, Controller::flowMetrics);
+    }
+
+    private static List<FlowStepMetric> flowMetrics(CordaRPCOps ops) {
+        try {
+            return ops.startFlowDynamic(FlowMetricsFlow.class).getReturnValue().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the flow metrics", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not read the flow metrics", e.getCause());
+        }
+    }
+
+    /**
+     * Count, sum, min and max of the accumulation of the unconsumed savings per bank, currency or
+     * account, and per currency, computed in the node database. Totals by account are paged.
+     */
+    @GetMapping(value = "/assetsavings/totals", produces = "application/json")
+    private List<AccumulationTotal> totals(@RequestParam(value = "groupBy", defaultValue = AggregateAccumulationFlow.BANK) String groupBy,
+                                           @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                           @RequestParam(value = "pageSize", defaultValue = "1000") int pageSize,
+                                           @RequestParam(value = "node", required = false) String node) {
+        AggregateAccumulationFlow.checkArguments(groupBy, offset, pageSize);
+        return node == null ? rpc.call(ops -> totals(ops, groupBy, offset, pageSize))
+                : rpc.call(node, ops -> totals(ops, groupBy, offset, pageSize));
+    }
+
+    private static List<AccumulationTotal> totals(CordaRPCOps ops, String groupBy, int offset, int pageSize) {
+        try {
+            return ops.startFlowDynamic(AggregateAccumulationFlow.class, groupBy, offset, pageSize).getReturnValue().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while totalling the accumulations", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not total the accumulations", e.getCause());
+        }
+    }
+
+    /**
+     * The number and total balance of the savings of an account, or of every bank when no account
+     * is given, from the node's running totals.
+     */
+    @GetMapping(value = "/assetsavings/portfolio", produces = "application/json")
+    private List<PortfolioTotal> portfolio(@RequestParam(value = "account", required = false) String account,
+                                           @RequestParam(value = "node", required = false) String node) {
+        return node == null ? rpc.call(ops -> portfolio(ops, account)) : rpc.call(node, ops -> portfolio(ops, account));
+    }
+
+    private static List<PortfolioTotal> portfolio(CordaRPCOps ops, String account) {
+        try {
+            return (account == null ? ops.startFlowDynamic(PortfolioSummaryFlow.class)
+                    : ops.startFlowDynamic(PortfolioSummaryFlow.class, account)).getReturnValue().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the portfolio", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not read the portfolio", e.getCause());
+        }
+    }
+
+    /**
+     * Starts an IssueFlow and answers with its flow id without waiting for it. A retry with the
+     * same Idempotency-Key header answers with the original flow instead of starting another.
+     */
+    @PostMapping(value = "/flows/issue", produces = "application/json")
+    private ResponseEntity<FlowStatus> issue(@RequestParam("customer") String customer,
+                                             @RequestParam("startDate") String startDate,
+                                             @RequestParam("accumulation") long accumulation,
+                                             @RequestHeader(value = REQUEST_KEY, required = false) String requestKey) {
+        return started(flows.start(FlowGateway.ISSUE, requestKey, IssueFlow.InitiatorFlow.class,
+                customer, startDate, accumulation));
+    }
+
+    /**
+     * Starts an UpdateFlow and answers with its flow id without waiting for it.
+     */
+    @PostMapping(value = "/flows/update", produces = "application/json")
+    private ResponseEntity<FlowStatus> update(@RequestParam("linearId") String linearId,
+                                              @RequestParam("newAccumulation") long newAccumulation,
+                                              @RequestParam("customer") String customer,
+                                              @RequestHeader(value = REQUEST_KEY, required = false) String requestKey) {
+        UniqueIdentifier stateLinearId = UniqueIdentifier.Companion.fromString(linearId);
+        return started(flows.start(FlowGateway.UPDATE, requestKey, UpdateFlow.InitiatorFlow.class,
+                stateLinearId, newAccumulation, customer));
+    }
+
+    /**
+     * Starts a TransferFlow and answers with its flow id without waiting for it.
+     */
+    @PostMapping(value = "/flows/transfer", produces = "application/json")
+    private ResponseEntity<FlowStatus> transfer(@RequestParam("linearId") String linearId,
+                                                @RequestParam("newBank") String newBank,
+                                                @RequestParam("customer") String customer,
+                                                @RequestParam("newCustomer") String newCustomer,
+                                                @RequestParam("newDate") String newDate,
+                                                @RequestParam("newAccumulation") long newAccumulation,
+                                                @RequestHeader(value = REQUEST_KEY, required = false) String requestKey) {
+        UniqueIdentifier stateLinearId = UniqueIdentifier.Companion.fromString(linearId);
+        Party newBankParty = proxy.wellKnownPartyFromX500Name(CordaX500Name.parse(newBank));
+        if (newBankParty == null) {
+            throw new IllegalArgumentException("Unknown bank " + newBank);
+        }
+        return started(flows.start(FlowGateway.TRANSFER, requestKey, TransferFlow.InitiatorFlow.class,
+                stateLinearId, newBankParty, customer, newCustomer, newDate, newAccumulation));
+    }
+
+    /**
+     * Starts a CancelFlow and answers with its flow id without waiting for it.
+     */
+    @PostMapping(value = "/flows/cancel", produces = "application/json")
+    private ResponseEntity<FlowStatus> cancel(@RequestParam("linearId") String linearId,
+                                              @RequestParam("customer") String customer,
+                                              @RequestHeader(value = REQUEST_KEY, required = false) String requestKey) {
+        UniqueIdentifier stateLinearId = UniqueIdentifier.Companion.fromString(linearId);
+        return started(flows.start(FlowGateway.CANCEL, requestKey, CancelFlow.InitiatorFlow.class,
+                stateLinearId, customer));
+    }
+
+    // 202 for a flow still running; a retry of a finished one gets its outcome with 200.
+    private static ResponseEntity<FlowStatus> started(FlowStatus status) {
+        return FlowStatus.RUNNING.equals(status.getStatus())
+                ? ResponseEntity.accepted().body(status)
+                : ResponseEntity.ok(status);
+    }
+
+    /**
+     * The flow of the type started with this request key, also after a webserver restart.
+     */
+    @GetMapping(value = "/flows/{type}/requests/{requestKey}", produces = "application/json")
+    private ResponseEntity<FlowStatus> flowByRequestKey(@PathVariable("type") String type,
+                                                        @PathVariable("requestKey") String requestKey) {
+        FlowStatus status = flows.find(type, requestKey);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    /**
+     * The current status of a flow started through the endpoints above.
+     */
+    @GetMapping(value = "/flows/{flowId}", produces = "application/json")
+    private ResponseEntity<FlowStatus> flowStatus(@PathVariable("flowId") String flowId) {
+        FlowStatus status = flows.status(flowId);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    /**
+     * Waits for the flow to finish without holding a servlet thread. Answers 202 with the running
+     * status if it has not finished within RESULT_TIMEOUT_MILLIS.
+     */
+    @GetMapping(value = "/flows/{flowId}/result", produces = "application/json")
+    private DeferredResult<ResponseEntity<FlowStatus>> flowResult(@PathVariable("flowId") String flowId) {
+        FlowStatus status = flows.status(flowId);
+        if (status == null) {
+            DeferredResult<ResponseEntity<FlowStatus>> notFound = new DeferredResult<>();
+            notFound.setResult(ResponseEntity.notFound().build());
+            return notFound;
+        }
+        DeferredResult<ResponseEntity<FlowStatus>> result = new DeferredResult<>(RESULT_TIMEOUT_MILLIS,
+                ResponseEntity.accepted().body(status));
+        status.getResult().whenComplete((ignored, error) -> result.setResult(ResponseEntity.ok(status)));
+        return result;
+    }
+
+    /**
+     * Flows in flight and the configured limit per flow type.
+     */
+    @GetMapping(value = "/flows", produces = "application/json")
+    private Map<String, Map<String, Integer>> flowsInFlight() {
+        return flows.inFlight();
+    }
+
+    @ExceptionHandler(FlowGateway.FlowLimitExceededException.class)
+    private ResponseEntity<Map<String, String>> tooManyFlows(FlowGateway.FlowLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", "1")
+                .body(Collections.singletonMap("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    private ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Collections.singletonMap("error", e.getMessage()));
+    }
+}
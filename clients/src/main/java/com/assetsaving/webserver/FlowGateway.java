@@ -0,0 +1,285 @@
+package com.assetsaving.webserver;
+
+import net.corda.client.rpc.RPCException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Starts flows over RPC without waiting for them, and keeps track of their outcome.
+ *
+ * Each flow type has its own limit on flows in flight. A start beyond the limit is rejected with
+ * FlowLimitExceededException instead of queueing more work on the node's flow threads.
+ *
+ * A start that carries a request key is made idempotent with a Corda client ID derived from it.
+ * A retry with the same key gets the status of the original flow, from memory or, after a webserver
+ * restart, from the node, which keeps the result of a flow started with a client ID. A flow that
+ * loses its RPC connection while running is reattached through its client ID once reconnected.
+ * When a finished flow is forgotten here, its client ID is removed on the node too, so a retry
+ * after that starts a new flow.
+ */
+@Component
+public class FlowGateway {
+
+    public static final String ISSUE = "issue";
+    public static final String UPDATE = "update";
+    public static final String TRANSFER = "transfer";
+    public static final String CANCEL = "cancel";
+
+    // The finished flows whose outcome is still kept for the status endpoint.
+    static final int MAX_FINISHED_FLOWS = 10_000;
+    // Corda accepts client IDs of up to 512 characters; keep well clear with the type prefix.
+    static final int MAX_REQUEST_KEY_LENGTH = 200;
+    // Reattachments of one flow before it is reported as failed.
+    static final int MAX_REATTACHMENTS = 5;
+
+    private final static Logger logger = LoggerFactory.getLogger(FlowGateway.class);
+
+    @Value("${config.flows.issue.maxInFlight:64}")
+    private int maxIssues;
+    @Value("${config.flows.update.maxInFlight:64}")
+    private int maxUpdates;
+    @Value("${config.flows.transfer.maxInFlight:32}")
+    private int maxTransfers;
+    @Value("${config.flows.cancel.maxInFlight:64}")
+    private int maxCancels;
+
+    private final NodeRPCConnection rpc;
+    private final Map<String, Semaphore> permits = new LinkedHashMap<>();
+    private final Map<String, FlowStatus> running = new ConcurrentHashMap<>();
+    // The flows started with a client ID, by client ID, as long as they are running or remembered.
+    private final Map<String, FlowStatus> byClientId = new ConcurrentHashMap<>();
+    private final Map<String, FlowStatus> finished = Collections.synchronizedMap(
+            new LinkedHashMap<String, FlowStatus>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FlowStatus> eldest) {
+                    if (size() <= MAX_FINISHED_FLOWS) {
+                        return false;
+                    }
+                    // Forget the client ID on the node as well, or it keeps the result for good.
+                    String clientId = eldest.getValue().getClientId();
+                    if (clientId != null) {
+                        byClientId.remove(clientId);
+                        CompletableFuture.runAsync(() -> releaseClientId(clientId));
+                    }
+                    return true;
+                }
+            });
+
+    public FlowGateway(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void initialisePermits() {
+        permits.put(ISSUE, new Semaphore(maxIssues));
+        permits.put(UPDATE, new Semaphore(maxUpdates));
+        permits.put(TRANSFER, new Semaphore(maxTransfers));
+        permits.put(CANCEL, new Semaphore(maxCancels));
+    }
+
+    /**
+     * Starts the flow and returns its status straight away. The permit of the flow type is held
+     * until the flow finishes.
+     *
+     * With a request key, a flow already started under the same key and type is returned instead
+     * of starting another one; a null key starts a new flow every time.
+     */
+    public FlowStatus start(String type, String requestKey, Class<? extends FlowLogic<SignedTransaction>> flowClass,
+                            Object... args) {
+        String clientId = requestKey == null ? null : clientId(type, requestKey);
+        if (clientId != null) {
+            FlowStatus existing = byClientId.get(clientId);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        Semaphore semaphore = permits.get(type);
+        if (!semaphore.tryAcquire()) {
+            throw new FlowLimitExceededException(type);
+        }
+        FlowHandle<SignedTransaction> handle;
+        try {
+            // The node answers a known client ID with the handle of the flow it already started.
+            handle = rpc.call(ops -> clientId == null
+                    ? ops.startFlowDynamic(flowClass, args)
+                    : ops.startFlowDynamicWithClientId(clientId, flowClass, args));
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+
+        String flowId = handle.getId().getUuid().toString();
+        FlowStatus status = new FlowStatus(flowId, type, clientId);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        status.result = done;
+        if (clientId != null) {
+            FlowStatus raced = byClientId.putIfAbsent(clientId, status);
+            if (raced != null) {
+                // A concurrent retry got there first; both handles are of the same flow.
+                semaphore.release();
+                return raced;
+            }
+        }
+        running.put(flowId, status);
+        track(status, handle.getReturnValue().toCompletableFuture(), 0, () -> {
+            semaphore.release();
+            finished.put(flowId, status);
+            running.remove(flowId);
+            done.complete(null);
+        });
+        return status;
+    }
+
+    /**
+     * The flow started under the request key and type, asking the node when this webserver does not
+     * remember it. Null if neither knows it.
+     */
+    public FlowStatus find(String type, String requestKey) {
+        String clientId = clientId(type, requestKey);
+        FlowStatus existing = byClientId.get(clientId);
+        if (existing != null) {
+            return existing;
+        }
+        FlowHandle<SignedTransaction> handle = rpc.call(ops -> ops.reattachFlowWithClientId(clientId));
+        if (handle == null) {
+            return null;
+        }
+        String flowId = handle.getId().getUuid().toString();
+        FlowStatus status = new FlowStatus(flowId, type, clientId);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        status.result = done;
+        FlowStatus raced = byClientId.putIfAbsent(clientId, status);
+        if (raced != null) {
+            return raced;
+        }
+        // Not started here, so it holds no permit.
+        running.put(flowId, status);
+        track(status, handle.getReturnValue().toCompletableFuture(), 0, () -> {
+            finished.put(flowId, status);
+            running.remove(flowId);
+            done.complete(null);
+        });
+        return status;
+    }
+
+    /**
+     * The Corda client ID of a start of the flow type with the caller's request key. The Client
+     * tool derives its IDs the same way, so both dedupe against each other.
+     */
+    public static String clientId(String type, String requestKey) {
+        if (requestKey.trim().isEmpty() || requestKey.length() > MAX_REQUEST_KEY_LENGTH) {
+            throw new IllegalArgumentException("A request key must have 1 to " + MAX_REQUEST_KEY_LENGTH + " characters");
+        }
+        return type + ":" + requestKey;
+    }
+
+    private void track(FlowStatus status, CompletableFuture<SignedTransaction> result, int reattachments,
+                       Runnable finish) {
+        result.whenComplete((stx, error) -> {
+            if (error == null) {
+                status.completed(stx.getId().toString());
+            } else if (status.getClientId() != null && isConnectionFailure(error) && reattachments < MAX_REATTACHMENTS) {
+                if (reattach(status, reattachments, finish)) {
+                    return;
+                }
+                status.failed(error);
+            } else {
+                status.failed(error);
+            }
+            finish.run();
+        });
+    }
+
+    // Picks the flow up again through its client ID; the pool waits for the connection to come back.
+    private boolean reattach(FlowStatus status, int reattachments, Runnable finish) {
+        try {
+            FlowHandle<SignedTransaction> handle = rpc.call(ops -> ops.reattachFlowWithClientId(status.getClientId()));
+            if (handle == null) {
+                logger.warn("The node no longer knows client ID {}", status.getClientId());
+                return false;
+            }
+            logger.info("Reattached flow {} with client ID {}", status.getFlowId(), status.getClientId());
+            track(status, handle.getReturnValue().toCompletableFuture(), reattachments + 1, finish);
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Could not reattach client ID {}", status.getClientId(), e);
+            return false;
+        }
+    }
+
+    // Not under the lock of the finished flows, so a slow node does not hold up the status lookups.
+    private void releaseClientId(String clientId) {
+        try {
+            if (!rpc.call(ops -> ops.removeClientId(clientId))) {
+                logger.warn("The node did not know client ID {} any more", clientId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not release client ID {} on the node", clientId, e);
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof RPCException;
+    }
+
+    /**
+     * The status of a flow started here, or null if it is unknown or has been forgotten.
+     */
+    public FlowStatus status(String flowId) {
+        FlowStatus status = running.get(flowId);
+        return status != null ? status : finished.get(flowId);
+    }
+
+    /**
+     * Flows in flight and the limit, per flow type.
+     */
+    public Map<String, Map<String, Integer>> inFlight() {
+        Map<String, Map<String, Integer>> inFlight = new LinkedHashMap<>();
+        permits.forEach((type, semaphore) -> {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            int limit = limit(type);
+            counts.put("inFlight", limit - semaphore.availablePermits());
+            counts.put("limit", limit);
+            inFlight.put(type, counts);
+        });
+        return inFlight;
+    }
+
+    private int limit(String type) {
+        switch (type) {
+            case ISSUE:
+                return maxIssues;
+            case UPDATE:
+                return maxUpdates;
+            case TRANSFER:
+                return maxTransfers;
+            default:
+                return maxCancels;
+        }
+    }
+
+    /**
+     * Thrown when a flow type already has its limit of flows in flight.
+     */
+    public static class FlowLimitExceededException extends RuntimeException {
+        public FlowLimitExceededException(String type) {
+            super("Too many " + type + " flows in flight, please retry later.");
+        }
+    }
+}
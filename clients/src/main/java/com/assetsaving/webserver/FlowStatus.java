@@ -0,0 +1,72 @@
+package com.assetsaving.webserver;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The JSON body describing a flow started through FlowGateway.
+ */
+public class FlowStatus {
+
+    public static final String RUNNING = "running";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+
+    private final String flowId;
+    private final String type;
+    private final String clientId;
+    private volatile String status = RUNNING;
+    private volatile String transactionId;
+    private volatile String error;
+    // Completes once the flow has finished and this status has been updated.
+    volatile CompletableFuture<?> result;
+
+    FlowStatus(String flowId, String type, String clientId) {
+        this.flowId = flowId;
+        this.type = type;
+        this.clientId = clientId;
+    }
+
+    void completed(String transactionId) {
+        this.transactionId = transactionId;
+        this.status = COMPLETED;
+    }
+
+    void failed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        this.error = cause.getMessage();
+        this.status = FAILED;
+    }
+
+    public String getFlowId() {
+        return flowId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    // Null when the flow was started without a request key.
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public CompletableFuture<?> getResult() {
+        return result;
+    }
+}
@@ -1,19 +1,29 @@
 package com.assetsaving.webserver;
 
-import net.corda.client.rpc.CordaRPCClient;
-import net.corda.client.rpc.CordaRPCConnection;
+import com.assetsaving.states.AssetSavingState;
 import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
 import net.corda.core.utilities.NetworkHostAndPort;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import rx.Observable;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.function.Function;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
 
 /**
- * Wraps an RPC connection to a Corda node.
+ * Wraps pools of RPC connections to one or more Corda nodes.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connections are configured using command line arguments. The node at config.rpc.host and
+ * config.rpc.port is the default one; config.rpc.nodes lists the addresses of further nodes, and
+ * calls are routed to a node by the organisation of its legal identity.
  */
 @Component
 public class NodeRPCConnection implements AutoCloseable {
@@ -29,20 +39,93 @@ public class NodeRPCConnection implements AutoCloseable {
     // The password for logging into the RPC client.
     @Value("${config.rpc.port}")
     private int rpcPort;
+    // Further nodes as comma separated host:port pairs, e.g. localhost:10009.
+    @Value("${config.rpc.nodes:}")
+    private String nodes;
+    // The number of RPC connections opened to each node.
+    @Value("${config.rpc.poolSize:4}")
+    private int poolSize;
 
-    private CordaRPCConnection rpcConnection;
+    // The pools keyed by the organisation of the node's legal identity, default node first.
+    private final Map<String, RPCConnectionPool> pools = new LinkedHashMap<>();
+    private RPCConnectionPool defaultPool;
     CordaRPCOps proxy;
+    private Observable<Vault.Update<AssetSavingState>> assetSavingUpdates;
 
     @PostConstruct
     public void initialiseNodeRPCConnection() {
-        NetworkHostAndPort rpcAddress = new NetworkHostAndPort(host, rpcPort);
-        CordaRPCClient rpcClient = new CordaRPCClient(rpcAddress);
-        rpcConnection = rpcClient.start(username, password);
-        proxy = rpcConnection.getProxy();
+        defaultPool = openPool(new NetworkHostAndPort(host, rpcPort));
+        for (String address : nodes.split(",")) {
+            if (!address.trim().isEmpty()) {
+                openPool(NetworkHostAndPort.parse(address.trim()));
+            }
+        }
+        proxy = defaultPool.proxy();
+    }
+
+    private RPCConnectionPool openPool(NetworkHostAndPort address) {
+        RPCConnectionPool pool = new RPCConnectionPool(address, username, password, poolSize);
+        String organisation = pool.call(ops -> ops.nodeInfo().getLegalIdentities().get(0).getName().getOrganisation());
+        pools.put(organisation, pool);
+        return pool;
+    }
+
+    /**
+     * Runs the call on the least busy connection to the default node.
+     */
+    public <T> T call(Function<CordaRPCOps, T> call) {
+        return defaultPool.call(call);
+    }
+
+    /**
+     * Runs the call on the least busy connection to the node of this organisation, e.g. BankB.
+     */
+    public <T> T call(String node, Function<CordaRPCOps, T> call) {
+        RPCConnectionPool pool = pools.get(node);
+        if (pool == null) {
+            throw new IllegalArgumentException("No RPC connection is configured for node " + node);
+        }
+        return pool.call(call);
+    }
+
+    /**
+     * Whether each node answers on at least one of its connections.
+     */
+    public Map<String, Boolean> health() {
+        Map<String, Boolean> health = new LinkedHashMap<>();
+        pools.forEach((node, pool) -> health.put(node, pool.isHealthy()));
+        return health;
+    }
+
+    /**
+     * Connection counts and utilisation of each node's pool.
+     */
+    public Map<String, Map<String, Object>> metrics() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        pools.forEach((node, pool) -> metrics.put(node, pool.metrics()));
+        return metrics;
+    }
+
+    /**
+     * The AssetSavingState updates of the node. Every caller shares one vault track, so the node
+     * keeps a single observable for this webserver however many subscribers there are.
+     */
+    public synchronized Observable<Vault.Update<AssetSavingState>> assetSavingUpdates() {
+        if (assetSavingUpdates == null) {
+            // Only the updates are used, so the snapshot is limited to a single state.
+            assetSavingUpdates = proxy.vaultTrackBy(
+                    new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL),
+                    new PageSpecification(DEFAULT_PAGE_NUM, 1),
+                    new Sort(Collections.emptySet()),
+                    AssetSavingState.class).getUpdates().share();
+        }
+        return assetSavingUpdates;
     }
 
     @PreDestroy
     public void close() {
-        rpcConnection.notifyServerAndClose();
+        for (RPCConnectionPool pool : pools.values()) {
+            pool.close();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.assetsaving.webserver;
+
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.client.rpc.GracefulReconnect;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A fixed number of reconnecting RPC connections to one node.
+ *
+ * Each call goes to the connection with the fewest calls in flight, so concurrent requests are
+ * serialised over several Artemis sessions instead of one. The connections reconnect by themselves
+ * when the node restarts.
+ */
+class RPCConnectionPool implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(RPCConnectionPool.class);
+
+    private final NetworkHostAndPort address;
+    private final List<PooledConnection> connections = new ArrayList<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    RPCConnectionPool(NetworkHostAndPort address, String username, String password, int size) {
+        this.address = address;
+        CordaRPCClient rpcClient = new CordaRPCClient(address);
+        for (int i = 0; i < size; i++) {
+            PooledConnection pooled = new PooledConnection();
+            Runnable onDisconnect = () -> {
+                pooled.connected = false;
+                logger.warn("RPC connection to {} lost, reconnecting", address);
+            };
+            Runnable onReconnect = () -> {
+                pooled.connected = true;
+                logger.info("RPC connection to {} re-established", address);
+            };
+            pooled.connection = rpcClient.start(username, password, new GracefulReconnect(onDisconnect, onReconnect, -1));
+            connections.add(pooled);
+        }
+    }
+
+    /**
+     * Runs the call on the least busy connection.
+     */
+    <T> T call(Function<CordaRPCOps, T> call) {
+        PooledConnection pooled = leastBusy();
+        pooled.inFlight.incrementAndGet();
+        calls.incrementAndGet();
+        peakInFlight.accumulateAndGet(totalInFlight(), Math::max);
+        try {
+            return call.apply(pooled.connection.getProxy());
+        } finally {
+            pooled.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * A proxy for long-lived use, such as a vault track. Calls made on it are not counted.
+     */
+    CordaRPCOps proxy() {
+        return connections.get(0).connection.getProxy();
+    }
+
+    /**
+     * Healthy when at least one connection is up and the node answers on it.
+     */
+    boolean isHealthy() {
+        for (PooledConnection pooled : connections) {
+            if (pooled.connected) {
+                try {
+                    pooled.connection.getProxy().currentNodeTime();
+                    return true;
+                } catch (RuntimeException e) {
+                    logger.warn("RPC health check of {} failed", address, e);
+                }
+            }
+        }
+        return false;
+    }
+
+    Map<String, Object> metrics() {
+        int connected = 0;
+        for (PooledConnection pooled : connections) {
+            if (pooled.connected) {
+                connected++;
+            }
+        }
+        int inFlight = totalInFlight();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("address", address.toString());
+        metrics.put("connections", connections.size());
+        metrics.put("connected", connected);
+        metrics.put("inFlight", inFlight);
+        metrics.put("peakInFlight", peakInFlight.get());
+        metrics.put("calls", calls.get());
+        metrics.put("utilisation", (double) inFlight / connections.size());
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        for (PooledConnection pooled : connections) {
+            pooled.connection.notifyServerAndClose();
+        }
+    }
+
+    private PooledConnection leastBusy() {
+        PooledConnection best = null;
+        for (PooledConnection pooled : connections) {
+            if (!pooled.connected) {
+                continue;
+            }
+            if (best == null || pooled.inFlight.get() < best.inFlight.get()) {
+                best = pooled;
+            }
+        }
+        // With every connection down, the call waits on the first one's reconnect.
+        return best == null ? connections.get(0) : best;
+    }
+
+    private int totalInFlight() {
+        int inFlight = 0;
+        for (PooledConnection pooled : connections) {
+            inFlight += pooled.inFlight.get();
+        }
+        return inFlight;
+    }
+
+    private static class PooledConnection {
+        private CordaRPCConnection connection;
+        private volatile boolean connected = true;
+        private final AtomicInteger inFlight = new AtomicInteger();
+    }
+}
@@ -0,0 +1,51 @@
+package com.assetsaving.contracts;
+
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of AssetSavingContract.verify for Issue, Update and Cancel transactions carrying
+ * one or many AssetSavings. Run with ./gradlew :contracts:jmh; the gc profiler adds the
+ * allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetSavingContractBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int states;
+
+    private final AssetSavingContract contract = new AssetSavingContract();
+    private LedgerTransaction issue;
+    private LedgerTransaction update;
+    private LedgerTransaction cancel;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLedger ledger = new BenchmarkLedger(states);
+        issue = ledger.issue();
+        update = ledger.update();
+        cancel = ledger.cancel();
+    }
+
+    @Benchmark
+    public void verifyIssue() {
+        contract.verify(issue);
+    }
+
+    @Benchmark
+    public void verifyUpdate() {
+        contract.verify(update);
+    }
+
+    @Benchmark
+    public void verifyCancel() {
+        contract.verify(cancel);
+    }
+}
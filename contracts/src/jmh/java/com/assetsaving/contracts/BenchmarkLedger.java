@@ -0,0 +1,118 @@
+package com.assetsaving.contracts;
+
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.finance.Currencies;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.node.MockServices;
+
+import java.security.PublicKey;
+import java.util.*;
+
+import static net.corda.testing.core.TestConstants.DUMMY_NOTARY_NAME;
+
+/**
+ * Builds resolved LedgerTransactions of AssetSavingContract commands for the benchmarks.
+ *
+ * The issuance is recorded in MockServices, so the Update, Transfer and Cancel transactions
+ * consume real StateRefs, as they do on a node.
+ */
+class BenchmarkLedger {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final TestIdentity bank = new TestIdentity(new CordaX500Name("BankA", "London", "GB"));
+    private final TestIdentity newBank = new TestIdentity(new CordaX500Name("BankB", "New York", "US"));
+    private final Party notary = new TestIdentity(DUMMY_NOTARY_NAME, 20).getParty();
+    private final MockServices services = new MockServices(Collections.singletonList("com.assetsaving.contracts"), bank);
+    private final Date startDate = new Date(System.currentTimeMillis() + 30 * DAY_MILLIS);
+
+    private final TransactionBuilder issueBuilder;
+    private final List<StateAndRef<AssetSavingState>> issued = new ArrayList<>();
+
+    BenchmarkLedger(int states) {
+        issueBuilder = new TransactionBuilder(notary);
+        List<AssetSavingState> outputs = new ArrayList<>(states);
+        for (int i = 0; i < states; i++) {
+            AssetSavingState state = new AssetSavingState(bank.getParty(), freshCustomer(), startDate,
+                    Currencies.DOLLARS(100), new UniqueIdentifier());
+            issueBuilder.addOutputState(state, AssetSavingContract.ID);
+            outputs.add(state);
+        }
+        issueBuilder.addCommand(new AssetSavingContract.Commands.Issue(), signers(outputs));
+
+        SignedTransaction issuance = services.signInitialTransaction(issueBuilder);
+        services.recordTransactions(issuance);
+        for (int i = 0; i < states; i++) {
+            issued.add(issuance.getTx().outRef(i));
+        }
+    }
+
+    LedgerTransaction issue() {
+        return issueBuilder.toLedgerTransaction(services);
+    }
+
+    LedgerTransaction update() {
+        TransactionBuilder builder = new TransactionBuilder(notary);
+        List<AssetSavingState> states = new ArrayList<>(issued.size());
+        for (StateAndRef<AssetSavingState> input : issued) {
+            builder.addInputState(input);
+            builder.addOutputState(input.getState().getData().withNewAccumulation(200L), AssetSavingContract.ID);
+            states.add(input.getState().getData());
+        }
+        return build(builder, new AssetSavingContract.Commands.Update(), states);
+    }
+
+    /**
+     * A transfer of the first issued state; the contract only allows one state per transfer.
+     */
+    LedgerTransaction transfer() {
+        StateAndRef<AssetSavingState> input = issued.get(0);
+        AssetSavingState output = input.getState().getData()
+                .withNewBankAndDateAndAccumulation(newBank.getParty(), freshCustomer(), startDate, 300L);
+        TransactionBuilder builder = new TransactionBuilder(notary);
+        builder.addInputState(input);
+        builder.addOutputState(output, AssetSavingContract.ID);
+        return build(builder, new AssetSavingContract.Commands.Transfer(),
+                Arrays.asList(input.getState().getData(), output));
+    }
+
+    LedgerTransaction cancel() {
+        TransactionBuilder builder = new TransactionBuilder(notary);
+        List<AssetSavingState> states = new ArrayList<>(issued.size());
+        for (StateAndRef<AssetSavingState> input : issued) {
+            builder.addInputState(input);
+            states.add(input.getState().getData());
+        }
+        return build(builder, new AssetSavingContract.Commands.Cancel(), states);
+    }
+
+    private LedgerTransaction build(TransactionBuilder builder, CommandData command, List<AssetSavingState> states) {
+        builder.addCommand(command, signers(states));
+        return builder.toLedgerTransaction(services);
+    }
+
+    private static List<PublicKey> signers(List<AssetSavingState> states) {
+        Set<PublicKey> signers = new LinkedHashSet<>();
+        for (AssetSavingState state : states) {
+            for (AbstractParty participant : state.getParticipants()) {
+                signers.add(participant.getOwningKey());
+            }
+        }
+        return new ArrayList<>(signers);
+    }
+
+    private static AnonymousParty freshCustomer() {
+        return new AnonymousParty(Crypto.generateKeyPair().getPublic());
+    }
+}
@@ -0,0 +1,32 @@
+package com.assetsaving.contracts;
+
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of AssetSavingContract.verify for a Transfer. It is kept apart from
+ * AssetSavingContractBenchmark because a transfer always moves exactly one AssetSaving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+    private final AssetSavingContract contract = new AssetSavingContract();
+    private LedgerTransaction transfer;
+
+    @Setup
+    public void setUp() {
+        transfer = new BenchmarkLedger(1).transfer();
+    }
+
+    @Benchmark
+    public void verifyTransfer() {
+        contract.verify(transfer);
+    }
+}
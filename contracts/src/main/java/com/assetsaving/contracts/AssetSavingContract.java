@@ -5,152 +5,405 @@ import com.assetsaving.states.AssetSavingState;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.contracts.CommandWithParties;
 import net.corda.core.contracts.Contract;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
 import net.corda.core.transactions.LedgerTransaction;
 
 import java.security.PublicKey;
-import java.util.Date;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
-import static net.corda.core.contracts.ContractsDSL.requireThat;
 
+/**
+ * Verification walks the inputs and outputs once, then applies the rule of the transaction's
+ * command from RULES. The states are paired by linearId in the same order as
+ * LedgerTransaction.groupStates, so a transaction breaking several requirements reports the same
+ * one as before.
+ */
 public class AssetSavingContract implements Contract {
     public static final String ID = "com.assetsaving.contracts.AssetSavingContract";
 
+    private static final CommandRule[] RULES = {
+            new CommandRule(Commands.Issue.class, AssetSavingContract::verifyIssue),
+            new CommandRule(Commands.Update.class, AssetSavingContract::verifyUpdate),
+            new CommandRule(Commands.Transfer.class, AssetSavingContract::verifyTransfer),
+            new CommandRule(Commands.Accumulate.class, AssetSavingContract::verifyAccumulate),
+            new CommandRule(Commands.Cancel.class, AssetSavingContract::verifyCancel)
+    };
+
     @Override
     public void verify(LedgerTransaction tx) {
 
         final CommandWithParties<Commands> command = requireSingleCommand(tx.getCommands(), Commands.class);
         final CommandData commandData = command.getValue();
 
-        if (commandData instanceof AssetSavingContract.Commands.Issue) {
-            requireThat(require -> {
-                AssetSavingState assetSavingState = tx.outputsOfType(AssetSavingState.class).get(0);
-
-                require.using("No inputs should be consumed when issuing an AssetSaving.",
-                        tx.getInputStates().size() == 0);
-                require.using("Only one output state should be created when issuing an AssetSaving.",
-                        tx.getOutputStates().size() == 1);
-                require.using("The Amount of the accumulation should be larger than 0.",
-                        assetSavingState.getAccumulation().getQuantity() > 0);
-                require.using("The start day should be later than today.",
-                        assetSavingState.getStartDate().after(new Date()));
-
-                List<PublicKey> signers = tx.getCommands().get(0).getSigners();
-                HashSet<PublicKey> signersSet = new HashSet<>();
-                for (PublicKey key : signers) {
-                    signersSet.add(key);
+        for (CommandRule rule : RULES) {
+            if (rule.command.isInstance(commandData)) {
+                rule.rule.verify(tx, new AssetSavings(tx));
+                return;
+            }
+        }
+    }
+
+    private static void verifyIssue(LedgerTransaction tx, AssetSavings states) {
+        List<AssetSavingState> outputStates = states.outputs;
+
+        require("No inputs should be consumed when issuing an AssetSaving.",
+                tx.getInputs().size() == 0);
+        require("At least one output state should be created when issuing an AssetSaving.",
+                outputStates.size() > 0);
+        require("Only AssetSaving output states should be created when issuing an AssetSaving.",
+                states.otherOutputs == 0);
+
+        // Each output is checked on its own, so one transaction can issue a whole batch.
+        long now = System.currentTimeMillis();
+        Party bank = outputStates.get(0).getBank();
+        Set<UniqueIdentifier> linearIds = outputStates.size() > 1 ? new HashSet<>(outputStates.size() * 2) : null;
+        Signers signers = new Signers(tx);
+        for (AssetSavingState assetSavingState : outputStates) {
+            require("The Amount of the accumulation should be larger than 0.",
+                    assetSavingState.getAccumulation().getQuantity() > 0);
+            require("The start day should be later than today.",
+                    assetSavingState.getStartDate().getTime() > now);
+            require("An AssetSaving should be issued with a zero balance and no accumulated periods.",
+                    assetSavingState.getBalance().getQuantity() == 0 &&
+                    assetSavingState.getBalance().getToken().equals(assetSavingState.getAccumulation().getToken()) &&
+                    assetSavingState.getAccumulatedPeriods() == 0);
+            require("All AssetSavings issued together should have the same bank.",
+                    assetSavingState.getBank().equals(bank));
+            require("Each AssetSaving issued together should have a different linearId.",
+                    linearIds == null || linearIds.add(assetSavingState.getLinearId()));
+            signers.participantsOf(assetSavingState);
+        }
+
+        require("Both bank and customer together only may sign AssetSaving issue transaction.",
+                signers.matchAll() && signers.distinct() >= 2);
+    }
+
+    private static void verifyUpdate(LedgerTransaction tx, AssetSavings states) {
+        // Many AssetSavings may be updated together; each linearId is one input and one output.
+        require("An AssetSaving update transaction should only consume one input state.",
+                states.hasAny() && states.otherInputs == 0);
+        require("An AssetSaving update transaction should only create one output state.",
+                states.otherOutputs == 0);
+
+        Signers signers = new Signers(tx);
+        states.pairByLinearId(true,
+                "An AssetSaving update transaction should only consume one input state.",
+                "An AssetSaving update transaction should only create one output state.",
+                (inputState, outputState) -> {
+                    require("The Amount of the accumulation should be changed.",
+                            outputState.getAccumulation().getQuantity() !=
+                                    inputState.getAccumulation().getQuantity());
+                    require("The currency of the accumulation must not be changed.",
+                            outputState.getAccumulation().getToken().equals(inputState.getAccumulation().getToken()));
+                    require("Other properties except accumulation must not be changed.",
+                            inputState.getBank().equals(outputState.getBank()) &&
+                            inputState.getCustomer().equals(outputState.getCustomer()) &&
+                            inputState.getStartDate().equals(outputState.getStartDate()) &&
+                            inputState.getLinearId().equals(outputState.getLinearId()) &&
+                            inputState.getBalance().equals(outputState.getBalance()) &&
+                            inputState.getAccumulatedPeriods() == outputState.getAccumulatedPeriods());
+                    signers.participantsOf(outputState);
+                });
+
+        require("Both bank and customer together only may sign AssetSaving update transaction.",
+                signers.matchAll() && signers.distinct() >= 2);
+    }
+
+    private static void verifyTransfer(LedgerTransaction tx, AssetSavings states) {
+        require("An AssetSaving transfer transaction should only consume one input state.",
+                tx.getInputs().size() == 1);
+        require("An AssetSaving transfer transaction should only create one output state.",
+                tx.getOutputs().size() == 1);
+        require("An AssetSaving transfer transaction should only consume one input state.",
+                states.inputs.size() == 1);
+        require("An AssetSaving transfer transaction should only create one output state.",
+                states.outputs.size() == 1);
+
+        AssetSavingState outputState = states.outputs.get(0);
+        AssetSavingState inputState = states.inputs.get(0);
+
+        require("The bank of the input state should be different from the output state.",
+                !outputState.getBank().equals(inputState.getBank()));
+        require("The customer of the input state should be different from the output state.",
+                !outputState.getCustomer().equals(inputState.getCustomer()));
+        require("The start day should be later than today.",
+                outputState.getStartDate().getTime() > System.currentTimeMillis());
+        require("The linearId must not be changed.",
+                inputState.getLinearId().equals(outputState.getLinearId()));
+        require("The currency of the accumulation must not be changed.",
+                outputState.getAccumulation().getToken().equals(inputState.getAccumulation().getToken()));
+        require("The balance must not be changed.",
+                inputState.getBalance().equals(outputState.getBalance()));
+
+        Signers signers = new Signers(tx);
+        signers.participantsOf(inputState);
+        signers.participantsOf(outputState);
+        require("The old and new customer account and, old and new bank must sign an AssetSaving transfer transaction",
+                signers.matchAll() && signers.distinct() == 4);
+    }
+
+    private static void verifyAccumulate(LedgerTransaction tx, AssetSavings states) {
+        // Every AssetSaving due in the same tick may be accumulated together.
+        require("An AssetSaving accumulate transaction should only consume AssetSaving states.",
+                states.hasAny() && states.otherInputs == 0);
+        require("An AssetSaving accumulate transaction should only create AssetSaving states.",
+                states.otherOutputs == 0);
+
+        TimeWindow timeWindow = tx.getTimeWindow();
+        require("An AssetSaving accumulate transaction should have a time window with a start.",
+                timeWindow != null && timeWindow.getFromTime() != null);
+        Instant fromTime = timeWindow.getFromTime();
+
+        Signers signers = new Signers(tx);
+        states.pairByLinearId(true,
+                "An AssetSaving accumulate transaction should consume one input state per linearId.",
+                "An AssetSaving accumulate transaction should create one output state per linearId.",
+                (inputState, outputState) -> {
+                    require("The accumulation should be due.",
+                            !fromTime.isBefore(inputState.getNextAccumulationDate()));
+                    require("The balance and the accumulation should be in the same currency.",
+                            inputState.getBalance().getToken().equals(inputState.getAccumulation().getToken()));
+                    require("Only one period of accumulation should be added to the balance.",
+                            inputState.accumulated().getBalance().equals(outputState.getBalance()) &&
+                            outputState.getAccumulatedPeriods() == inputState.getAccumulatedPeriods() + 1);
+                    require("Other properties except balance must not be changed.",
+                            inputState.getBank().equals(outputState.getBank()) &&
+                            inputState.getCustomer().equals(outputState.getCustomer()) &&
+                            inputState.getStartDate().equals(outputState.getStartDate()) &&
+                            inputState.getAccumulation().equals(outputState.getAccumulation()));
+                    signers.participantsOf(outputState);
+                });
+
+        require("Both bank and customer together only may sign AssetSaving accumulate transaction.",
+                signers.matchAll() && signers.distinct() >= 2);
+    }
+
+    private static void verifyCancel(LedgerTransaction tx, AssetSavings states) {
+        // Many AssetSavings may be cancelled together; each linearId is one input and no output.
+        require("Only one input state should be consumed when cancel an AssetSaving.",
+                states.hasAny() && states.otherInputs == 0);
+
+        Signers signers = new Signers(tx);
+        states.pairByLinearId(false,
+                "Only one input state should be consumed when cancel an AssetSaving.",
+                null,
+                (inputState, outputState) -> signers.participantsOf(inputState));
+
+        require("No output state should be created when cancel an AssetSaving.",
+                tx.getOutputs().size() == 0);
+
+        require("Both bank and customer together only may sign the AssetSaving cancel transaction.",
+                signers.matchAll() && signers.distinct() >= 2);
+    }
+
+    // Same failure as ContractsDSL.requireThat, without allocating a Requirements block per check.
+    private static void require(String message, boolean expression) {
+        if (!expression) {
+            throw new IllegalArgumentException("Failed requirement: " + message);
+        }
+    }
+
+    private interface Rule {
+        void verify(LedgerTransaction tx, AssetSavings states);
+    }
+
+    private interface PairCheck {
+        void check(AssetSavingState input, AssetSavingState output);
+    }
+
+    private static final class CommandRule {
+        private final Class<? extends Commands> command;
+        private final Rule rule;
+
+        private CommandRule(Class<? extends Commands> command, Rule rule) {
+            this.command = command;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * The AssetSaving inputs and outputs of a transaction, collected in one pass, and the number
+     * of other states next to them.
+     */
+    private static final class AssetSavings {
+        // Marks a linearId held by more than one state.
+        private static final Object DUPLICATE = new Object();
+
+        private final List<AssetSavingState> inputs;
+        private final List<AssetSavingState> outputs;
+        private final int otherInputs;
+        private final int otherOutputs;
+
+        private AssetSavings(LedgerTransaction tx) {
+            List<StateAndRef<ContractState>> txInputs = tx.getInputs();
+            List<TransactionState<ContractState>> txOutputs = tx.getOutputs();
+            inputs = new ArrayList<>(txInputs.size());
+            outputs = new ArrayList<>(txOutputs.size());
+            int others = 0;
+            for (StateAndRef<ContractState> input : txInputs) {
+                ContractState state = input.getState().getData();
+                if (state instanceof AssetSavingState) {
+                    inputs.add((AssetSavingState) state);
+                } else {
+                    others++;
                 }
+            }
+            otherInputs = others;
+            others = 0;
+            for (TransactionState<ContractState> output : txOutputs) {
+                ContractState state = output.getData();
+                if (state instanceof AssetSavingState) {
+                    outputs.add((AssetSavingState) state);
+                } else {
+                    others++;
+                }
+            }
+            otherOutputs = others;
+        }
+
+        private boolean hasAny() {
+            return !inputs.isEmpty() || !outputs.isEmpty();
+        }
 
-                List<AbstractParty> participants = tx.getOutputStates().get(0).getParticipants();
-                HashSet<PublicKey> participantKeys = new HashSet<>();
-                for (AbstractParty party : participants) {
-                    participantKeys.add(party.getOwningKey());
+        /**
+         * Requires one input per linearId and, when withOutputs, one output for it as well, then
+         * hands each pair to the check. The linearIds are visited in input order and the outputs
+         * without an input come last, as in groupStates.
+         */
+        private void pairByLinearId(boolean withOutputs, String oneInput, String oneOutput, PairCheck check) {
+            if (inputs.size() <= 1 && outputs.size() <= 1) {
+                AssetSavingState input = inputs.isEmpty() ? null : inputs.get(0);
+                AssetSavingState output = outputs.isEmpty() ? null : outputs.get(0);
+                boolean paired = input != null && output != null && input.getLinearId().equals(output.getLinearId());
+                if (input != null) {
+                    if (withOutputs) {
+                        require(oneOutput, paired);
+                    }
+                    check.check(input, paired ? output : null);
+                }
+                require(oneInput, output == null || paired);
+                return;
+            }
+
+            Map<UniqueIdentifier, Object> inputsById = index(inputs);
+            Map<UniqueIdentifier, Object> outputsById = index(outputs);
+            for (AssetSavingState input : inputs) {
+                require(oneInput, inputsById.get(input.getLinearId()) != DUPLICATE);
+                Object output = outputsById.get(input.getLinearId());
+                if (withOutputs) {
+                    require(oneOutput, output != null && output != DUPLICATE);
                 }
+                check.check(input, output instanceof AssetSavingState ? (AssetSavingState) output : null);
+            }
+            for (AssetSavingState output : outputs) {
+                require(oneInput, inputsById.containsKey(output.getLinearId()));
+            }
+        }
 
-                require.using("Both bank and customer together only may sign AssetSaving issue transaction.",
-                        signersSet.containsAll(participantKeys) && signersSet.size() == 2);
-
-                return null;
-            });
-        } else if (commandData instanceof AssetSavingContract.Commands.Update) {
-            requireThat(require -> {
-                require.using("An AssetSaving update transaction should only consume one input state.",
-                        tx.getInputStates().size() == 1);
-                require.using("An AssetSaving update transaction should only create one output state.",
-                        tx.getOutputStates().size() == 1);
-
-                AssetSavingState outputState = tx.outputsOfType(AssetSavingState.class).get(0);
-                AssetSavingState inputState = tx.inputsOfType(AssetSavingState.class).get(0);
-
-                require.using("The Amount of the accumulation should be changed.",
-                        outputState.getAccumulation().getQuantity() !=
-                                inputState.getAccumulation().getQuantity());
-                require.using("Other properties except accumulation must not be changed.",
-                        inputState.getBank().equals(outputState.getBank()) &&
-                        inputState.getCustomer().equals(outputState.getCustomer()) &&
-                        inputState.getStartDate().equals(outputState.getStartDate()) &&
-                        inputState.getLinearId().equals(outputState.getLinearId()));
-
-                List<PublicKey> signers = tx.getCommands().get(0).getSigners();
-                HashSet<PublicKey> signersSet = new HashSet<>();
-                for (PublicKey key : signers) {
-                    signersSet.add(key);
+        private static Map<UniqueIdentifier, Object> index(List<AssetSavingState> states) {
+            Map<UniqueIdentifier, Object> byId = new HashMap<>(states.size() * 2);
+            for (AssetSavingState state : states) {
+                if (byId.put(state.getLinearId(), state) != null) {
+                    byId.put(state.getLinearId(), DUPLICATE);
                 }
+            }
+            return byId;
+        }
+    }
 
-                List<AbstractParty> participants = tx.getOutputStates().get(0).getParticipants();
-                HashSet<PublicKey> participantKeys = new HashSet<>();
-                for (AbstractParty party : participants) {
-                    participantKeys.add(party.getOwningKey());
+    /**
+     * Matches the participants of the states against the signers of the transaction's first
+     * command, the same way as comparing their two key sets. Small signer lists are scanned;
+     * larger ones are indexed once.
+     */
+    private static final class Signers {
+        private static final int SCAN_LIMIT = 8;
+
+        private final PublicKey[] keys;
+        private final boolean[] matched;
+        private final Map<PublicKey, Integer> index;
+        private int distinct;
+        private int distinctMatched = 0;
+        private boolean unexpected = false;
+
+        private Signers(LedgerTransaction tx) {
+            List<PublicKey> signers = tx.getCommands().get(0).getSigners();
+            keys = signers.toArray(new PublicKey[0]);
+            matched = new boolean[keys.length];
+            index = keys.length > SCAN_LIMIT ? new HashMap<>(keys.length * 2) : null;
+            // Duplicated signers are matched through their first position only.
+            distinct = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (firstPosition(keys[i], i) == i) {
+                    distinct++;
+                } else {
+                    matched[i] = true;
                 }
+            }
+        }
 
-                require.using("Both bank and customer together only may sign AssetSaving update transaction.",
-                        signersSet.containsAll(participantKeys) && signersSet.size() == 2);
-
-
-                return null;
-            });
-        } else if (commandData instanceof AssetSavingContract.Commands.Transfer) {
-            requireThat(require -> {
-                require.using("An AssetSaving transfer transaction should only consume one input state.",
-                        tx.getInputStates().size() == 1);
-                require.using("An AssetSaving transfer transaction should only create one output state.",
-                        tx.getOutputStates().size() == 1);
-
-                AssetSavingState outputState = tx.outputsOfType(AssetSavingState.class).get(0);
-                AssetSavingState inputState = tx.inputsOfType(AssetSavingState.class).get(0);
-
-                require.using("The bank of the input state should be different from the output state.",
-                        !outputState.getBank().equals(inputState.getBank()));
-                require.using("The customer of the input state should be different from the output state.",
-                        !outputState.getCustomer().equals(inputState.getCustomer()));
-                require.using("The start day should be later than today.",
-                        outputState.getStartDate().after(new Date()));
-                require.using("The linearId must not be changed.",
-                        inputState.getLinearId().equals(outputState.getLinearId()));
-
-                Set<PublicKey> listOfParticipantPublicKeys = inputState.getParticipants()
-                        .stream().map(AbstractParty::getOwningKey).collect(Collectors.toSet());
-                listOfParticipantPublicKeys.add(outputState.getBank().getOwningKey());
-                listOfParticipantPublicKeys.add(outputState.getCustomer().getOwningKey());
-
-                List<PublicKey> arrayOfSigners = tx.getCommands().get(0).getSigners();
-                Set<PublicKey> setOfSigners = new HashSet<PublicKey>(arrayOfSigners);
-                require.using("The old and new customer account and, old and new bank must sign an AssetSaving transfer transaction",
-                        setOfSigners.equals(listOfParticipantPublicKeys) && setOfSigners.size() == 4);
-
-                return null;
-            });
-        } else if (commandData instanceof AssetSavingContract.Commands.Cancel) {
-            requireThat(require -> {
-                require.using("Only one input state should be consumed when cancel an AssetSaving.",
-                        tx.getInputStates().size() == 1);
-                require.using("No output state should be created when cancel an AssetSaving.",
-                        tx.getOutputStates().size() == 0);
-
-                List<PublicKey> signers = tx.getCommands().get(0).getSigners();
-                HashSet<PublicKey> signersSet = new HashSet<>();
-                for (PublicKey key : signers) {
-                    signersSet.add(key);
+        private int firstPosition(PublicKey key, int limit) {
+            if (index != null) {
+                Integer position = index.putIfAbsent(key, limit);
+                return position == null ? limit : position;
+            }
+            for (int i = 0; i < limit; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
                 }
+            }
+            return limit;
+        }
 
-                AssetSavingState inputState = tx.inputsOfType(AssetSavingState.class).get(0);
+        private void participantsOf(AssetSavingState state) {
+            participant(state.getBank());
+            participant(state.getCustomer());
+        }
 
-                Set<PublicKey> listOfParticipantPublicKeys = inputState.getParticipants()
-                        .stream().map(AbstractParty::getOwningKey).collect(Collectors.toSet());
+        private void participant(AbstractParty party) {
+            PublicKey key = party.getOwningKey();
+            int position = position(key);
+            if (position < 0) {
+                unexpected = true;
+            } else if (!matched[position]) {
+                matched[position] = true;
+                distinctMatched++;
+            }
+        }
 
-                List<PublicKey> arrayOfSigners = tx.getCommands().get(0).getSigners();
-                Set<PublicKey> setOfSigners = new HashSet<PublicKey>(arrayOfSigners);
+        private int position(PublicKey key) {
+            if (index != null) {
+                Integer position = index.get(key);
+                return position == null ? -1 : position;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
 
-                require.using("Both bank and customer together only may sign the AssetSaving cancel transaction.",
-                        setOfSigners.equals(listOfParticipantPublicKeys) && signersSet.size() == 2);
+        // Every participant signs and every signer is a participant.
+        private boolean matchAll() {
+            return !unexpected && distinctMatched == distinct;
+        }
 
-                return null;
-            });
+        private int distinct() {
+            return distinct;
         }
     }
 
@@ -166,5 +419,8 @@ public class AssetSavingContract implements Contract {
 
         class Cancel implements Commands {
         }
+
+        class Accumulate implements Commands {
+        }
     }
 }
@@ -0,0 +1,7 @@
+package com.assetsaving.schemas;
+
+/**
+ * The family of schemas for AssetSavingState.
+ */
+public class AssetSavingSchema {
+}
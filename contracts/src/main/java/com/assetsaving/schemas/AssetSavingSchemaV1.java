@@ -0,0 +1,94 @@
+package com.assetsaving.schemas;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * An AssetSavingState schema.
+ *
+ * The columns below are the attributes we filter on, so they are indexed and can be used
+ * in VaultCustomQueryCriteria without deserializing the state blobs.
+ */
+public class AssetSavingSchemaV1 extends MappedSchema {
+    public AssetSavingSchemaV1() {
+        super(AssetSavingSchema.class, 1, ImmutableList.of(PersistentAssetSaving.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "asset-saving.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "asset_saving_states", indexes = {
+            @Index(name = "asset_saving_bank_idx", columnList = "bank_name"),
+            @Index(name = "asset_saving_customer_idx", columnList = "customer_key_hash"),
+            @Index(name = "asset_saving_start_date_idx", columnList = "start_date"),
+            @Index(name = "asset_saving_currency_idx", columnList = "currency_code"),
+            @Index(name = "asset_saving_accumulation_idx", columnList = "accumulation"),
+            @Index(name = "asset_saving_bank_total_idx", columnList = "bank_name,currency_code,accumulation"),
+            @Index(name = "asset_saving_customer_total_idx", columnList = "customer_key_hash,currency_code,accumulation")
+    })
+    public static class PersistentAssetSaving extends PersistentState {
+        @Column(name = "bank_name", nullable = false) private final String bankName;
+        @Column(name = "customer_key_hash", length = 130, nullable = false) private final String customerKeyHash;
+        @Column(name = "start_date", nullable = false) private final Instant startDate;
+        @Column(name = "currency_code", length = 3, nullable = false) private final String currencyCode;
+        @Column(name = "accumulation", nullable = false) private final long accumulation;
+        @Column(name = "linear_id", nullable = false) private final UUID linearId;
+
+        public PersistentAssetSaving(String bankName, String customerKeyHash, Instant startDate,
+                                     String currencyCode, long accumulation, UUID linearId) {
+            this.bankName = bankName;
+            this.customerKeyHash = customerKeyHash;
+            this.startDate = startDate;
+            this.currencyCode = currencyCode;
+            this.accumulation = accumulation;
+            this.linearId = linearId;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentAssetSaving() {
+            this.bankName = null;
+            this.customerKeyHash = null;
+            this.startDate = null;
+            this.currencyCode = null;
+            this.accumulation = 0;
+            this.linearId = null;
+        }
+
+        public String getBankName() {
+            return bankName;
+        }
+
+        public String getCustomerKeyHash() {
+            return customerKeyHash;
+        }
+
+        public Instant getStartDate() {
+            return startDate;
+        }
+
+        public String getCurrencyCode() {
+            return currencyCode;
+        }
+
+        public long getAccumulation() {
+            return accumulation;
+        }
+
+        public UUID getLinearId() {
+            return linearId;
+        }
+    }
+}
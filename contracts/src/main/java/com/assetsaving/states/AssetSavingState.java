@@ -1,21 +1,37 @@
 package com.assetsaving.states;
 
 import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.schemas.AssetSavingSchemaV1;
 import net.corda.core.contracts.*;
+import net.corda.core.crypto.CryptoUtils;
+import net.corda.core.flows.FlowLogicRefFactory;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import net.corda.core.serialization.ConstructorForDeserialization;
+import net.corda.core.serialization.DeprecatedConstructorForDeserialization;
 import net.corda.finance.Currencies;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Currency;
 import java.util.Date;
 import java.util.List;
 
 @BelongsToContract(AssetSavingContract.class)
-public class AssetSavingState implements ContractState, LinearState {
+public class AssetSavingState implements ContractState, LinearState, QueryableState, SchedulableState {
+
+    // The accumulation is added to the balance once per period, starting on the start date.
+    public static final int ACCUMULATION_PERIOD_MONTHS = 1;
+
+    // The flow the node scheduler starts when an accumulation falls due.
+    private static final String SCHEDULED_FLOW = "com.assetsaving.flows.AccumulateFlow$ScheduledFlow";
 
     // private variables
     private final Party bank;
@@ -23,23 +39,30 @@ public class AssetSavingState implements ContractState, LinearState {
     private final Date startDate;
     private final Amount<Currency> accumulation;
     private final UniqueIdentifier linearId;
+    // Nullable so that states serialized before these fields existed can still be read.
+    private final Amount<Currency> balance;
+    private final Integer accumulatedPeriods;
 
     /* Constructor of your Corda state */
     @ConstructorForDeserialization
-    public AssetSavingState(Party bank, AnonymousParty customer, Date startDate, Amount<Currency> accumulation, UniqueIdentifier linearId) {
+    public AssetSavingState(Party bank, AnonymousParty customer, Date startDate, Amount<Currency> accumulation, UniqueIdentifier linearId,
+                            Amount<Currency> balance, Integer accumulatedPeriods) {
         this.bank = bank;
         this.customer = customer;
         this.startDate = startDate;
         this.accumulation = accumulation;
         this.linearId = linearId;
+        this.balance = balance;
+        this.accumulatedPeriods = accumulatedPeriods;
+    }
+
+    @DeprecatedConstructorForDeserialization(version = 1)
+    public AssetSavingState(Party bank, AnonymousParty customer, Date startDate, Amount<Currency> accumulation, UniqueIdentifier linearId) {
+        this(bank, customer, startDate, accumulation, linearId, null, null);
     }
 
     public AssetSavingState(Party bank, AnonymousParty customer, Date startDate, Amount<Currency> accumulation) {
-        this.bank = bank;
-        this.customer = customer;
-        this.startDate = startDate;
-        this.accumulation = accumulation;
-        this.linearId = new UniqueIdentifier();
+        this(bank, customer, startDate, accumulation, new UniqueIdentifier(), null, null);
     }
 
     // getters
@@ -59,12 +82,38 @@ public class AssetSavingState implements ContractState, LinearState {
         return accumulation;
     }
 
+    // The total accumulated so far, zero until the first accumulation.
+    public Amount<Currency> getBalance() {
+        return balance == null ? new Amount<>(0, accumulation.getToken()) : balance;
+    }
+
+    public int getAccumulatedPeriods() {
+        return accumulatedPeriods == null ? 0 : accumulatedPeriods;
+    }
+
+    // The date the next accumulation falls due.
+    public Instant getNextAccumulationDate() {
+        return startDate.toInstant().atZone(ZoneOffset.UTC)
+                .plusMonths((long) ACCUMULATION_PERIOD_MONTHS * getAccumulatedPeriods())
+                .toInstant();
+    }
+
+    // The accumulation stays in the currency of the plan, which its balance is kept in.
     public AssetSavingState withNewAccumulation (Long newAccumulation) {
-        return new AssetSavingState(bank, customer, startDate, Currencies.DOLLARS(newAccumulation), linearId);
+        return new AssetSavingState(bank, customer, startDate, Currencies.AMOUNT(newAccumulation, accumulation.getToken()),
+                linearId, balance, accumulatedPeriods);
     }
 
     public AssetSavingState withNewBankAndDateAndAccumulation (Party newBank, AnonymousParty newCustomer, Date newDate, Long newAccumulation) {
-        return new AssetSavingState(newBank, newCustomer, newDate, Currencies.DOLLARS(newAccumulation), linearId);
+        // The balance moves with the plan; the periods restart from the new start date.
+        return new AssetSavingState(newBank, newCustomer, newDate, Currencies.AMOUNT(newAccumulation, accumulation.getToken()),
+                linearId, balance, null);
+    }
+
+    // The state after one more period has been accumulated.
+    public AssetSavingState accumulated() {
+        return new AssetSavingState(bank, customer, startDate, accumulation, linearId,
+                getBalance().plus(accumulation), getAccumulatedPeriods() + 1);
     }
 
     @NotNull
@@ -79,4 +128,29 @@ public class AssetSavingState implements ContractState, LinearState {
     public List<AbstractParty> getParticipants() {
         return Arrays.asList(bank, customer);
     }
+
+    @Override
+    public ScheduledActivity nextScheduledActivity(StateRef thisStateRef, FlowLogicRefFactory flowLogicRefFactory) {
+        return new ScheduledActivity(flowLogicRefFactory.create(SCHEDULED_FLOW, thisStateRef), getNextAccumulationDate());
+    }
+
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof AssetSavingSchemaV1) {
+            return new AssetSavingSchemaV1.PersistentAssetSaving(
+                    bank.getName().toString(),
+                    CryptoUtils.toStringShort(customer.getOwningKey()),
+                    startDate.toInstant(),
+                    accumulation.getToken().getCurrencyCode(),
+                    accumulation.getQuantity(),
+                    linearId.getId());
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new AssetSavingSchemaV1());
+    }
 }
@@ -0,0 +1,99 @@
+package com.assetsaving.contracts;
+
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.finance.Currencies;
+import net.corda.testing.node.MockServices;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static com.assetsaving.states.TestUtils.*;
+import static net.corda.testing.node.NodeTestUtils.ledger;
+
+public class AccumulateTest {
+
+    static private final MockServices ledgerServices = new MockServices(
+            Arrays.asList("com.assetsaving.contracts")
+    );
+
+    @Test
+    public void accumulateTransactionMustAddOnePeriod() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState inputState = new AssetSavingState(PartyA.getParty(), AccountB, dateFormat.parse("2021-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inputState.accumulated().accumulated());
+                tx.timeWindow(TimeWindow.fromOnly(Instant.now()));
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Accumulate());
+                return tx.failsWith("Only one period of accumulation should be added to the balance.");
+            });
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inputState.accumulated());
+                tx.timeWindow(TimeWindow.fromOnly(Instant.now()));
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Accumulate());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void accumulationMustBeDue() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState inputState = new AssetSavingState(PartyA.getParty(), AccountB, dateFormat.parse("2099-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inputState.accumulated());
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Accumulate());
+                return tx.failsWith("An AssetSaving accumulate transaction should have a time window with a start.");
+            });
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inputState.accumulated());
+                tx.timeWindow(TimeWindow.fromOnly(Instant.now()));
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Accumulate());
+                return tx.failsWith("The accumulation should be due.");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void manyLinearIdsMayBeAccumulatedTogether() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState inputState = new AssetSavingState(PartyA.getParty(), AccountB, dateFormat.parse("2021-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState otherInputState = new AssetSavingState(PartyA.getParty(), AccountC, dateFormat.parse("2021-12-25"), Currencies.POUNDS(2), new UniqueIdentifier());
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.input(AssetSavingContract.ID, otherInputState);
+                tx.output(AssetSavingContract.ID, inputState.accumulated());
+                tx.output(AssetSavingContract.ID, otherInputState.accumulated());
+                tx.timeWindow(TimeWindow.fromOnly(Instant.now()));
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Accumulate());
+                return tx.failsWith("Both bank and customer together only may sign AssetSaving accumulate transaction.");
+            });
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.input(AssetSavingContract.ID, otherInputState);
+                tx.output(AssetSavingContract.ID, inputState.accumulated());
+                tx.output(AssetSavingContract.ID, otherInputState.accumulated());
+                tx.timeWindow(TimeWindow.fromOnly(Instant.now()));
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey(), AccountC.getOwningKey()), new AssetSavingContract.Commands.Accumulate());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+}
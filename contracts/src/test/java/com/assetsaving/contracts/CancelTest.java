@@ -119,4 +119,26 @@ public class CancelTest {
         });
     }
 
+    @Test
+    public void manyLinearIdsMayBeCancelledTogether() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState inputState = new AssetSavingState(PartyA.getParty(), AccountB, dateFormat.parse("2021-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState otherInputState = new AssetSavingState(PartyA.getParty(), AccountC, dateFormat.parse("2021-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+
+        ledger(ledgerServices, l->{
+            l.transaction(tx-> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.input(AssetSavingContract.ID, otherInputState);
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Cancel());
+                return tx.failsWith("Both bank and customer together only may sign the AssetSaving cancel transaction.");
+            });
+            l.transaction(tx-> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.input(AssetSavingContract.ID, otherInputState);
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey(), AccountC.getOwningKey()), new AssetSavingContract.Commands.Cancel());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
 }
@@ -10,7 +10,10 @@ import com.assetsaving.states.AssetSavingState;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.Date;
 
 import static com.assetsaving.states.TestUtils.*;
 import static net.corda.testing.node.NodeTestUtils.ledger;
@@ -67,16 +70,86 @@ public class IssueTest {
     }
 
     @Test
-    public void issueTransactionMustHaveOneOutput() throws ParseException {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountB, dateFormat.parse("2021-12-12"), Currencies.POUNDS(1), new UniqueIdentifier());
+    public void issueTransactionMayHaveManyOutputs() {
+        // The start date has to lie ahead, or verification stops at that rule.
+        Date startDate = Date.from(LocalDate.now().plusDays(30).atStartOfDay(ZoneOffset.UTC).toInstant());
+        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountB, startDate, Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState otherAssetSavingState = new AssetSavingState(PartyA.getParty(), AccountC, startDate, Currencies.POUNDS(2), new UniqueIdentifier());
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Issue());
+                return tx.failsWith("At least one output state should be created when issuing an AssetSaving.");
+            });
+            l.transaction(tx -> {
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Issue());
+                tx.output(AssetSavingContract.ID, assetSavingState);
+                tx.output(AssetSavingContract.ID, assetSavingState);
+                return tx.failsWith("Each AssetSaving issued together should have a different linearId.");
+            });
+            l.transaction(tx -> {
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey(), AccountC.getOwningKey()), new AssetSavingContract.Commands.Issue());
+                tx.output(AssetSavingContract.ID, assetSavingState);
+                tx.output(AssetSavingContract.ID, otherAssetSavingState);
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void batchIssueMustBeSignedByEveryCustomer() {
+        Date startDate = Date.from(LocalDate.now().plusDays(30).atStartOfDay(ZoneOffset.UTC).toInstant());
+        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountB, startDate, Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState otherAssetSavingState = new AssetSavingState(PartyA.getParty(), AccountC, startDate, Currencies.POUNDS(2), new UniqueIdentifier());
 
         ledger(ledgerServices, l -> {
             l.transaction(tx -> {
                 tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Issue());
                 tx.output(AssetSavingContract.ID, assetSavingState);
+                tx.output(AssetSavingContract.ID, otherAssetSavingState);
+                return tx.failsWith("Both bank and customer together only may sign AssetSaving issue transaction.");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void batchIssueMustHaveOneBank() {
+        Date startDate = Date.from(LocalDate.now().plusDays(30).atStartOfDay(ZoneOffset.UTC).toInstant());
+        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountB, startDate, Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState otherAssetSavingState = new AssetSavingState(PartyD.getParty(), AccountC, startDate, Currencies.POUNDS(2), new UniqueIdentifier());
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey(), PartyD.getPublicKey(), AccountC.getOwningKey()), new AssetSavingContract.Commands.Issue());
                 tx.output(AssetSavingContract.ID, assetSavingState);
-                return tx.failsWith("Only one output state should be created when issuing an AssetSaving.");
+                tx.output(AssetSavingContract.ID, otherAssetSavingState);
+                return tx.failsWith("All AssetSavings issued together should have the same bank.");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void issuedBalanceMustBeZero() {
+        Date startDate = Date.from(LocalDate.now().plusDays(30).atStartOfDay(ZoneOffset.UTC).toInstant());
+        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountB, startDate, Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState withBalance = new AssetSavingState(PartyA.getParty(), AccountB, startDate, Currencies.POUNDS(1),
+                new UniqueIdentifier(), Currencies.POUNDS(100), 0);
+        AssetSavingState withPeriods = new AssetSavingState(PartyA.getParty(), AccountB, startDate, Currencies.POUNDS(1),
+                new UniqueIdentifier(), Currencies.POUNDS(0), 3);
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Issue());
+                tx.output(AssetSavingContract.ID, withBalance);
+                return tx.failsWith("An AssetSaving should be issued with a zero balance and no accumulated periods.");
+            });
+            l.transaction(tx -> {
+                tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Issue());
+                tx.output(AssetSavingContract.ID, withPeriods);
+                return tx.failsWith("An AssetSaving should be issued with a zero balance and no accumulated periods.");
             });
             l.transaction(tx -> {
                 tx.command(Arrays.asList(PartyA.getPublicKey(), AccountB.getOwningKey()), new AssetSavingContract.Commands.Issue());
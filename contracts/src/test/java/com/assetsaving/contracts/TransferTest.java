@@ -11,7 +11,10 @@ import org.junit.Test;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.Date;
 
 import static net.corda.testing.node.NodeTestUtils.ledger;
 
@@ -237,4 +240,37 @@ public class TransferTest {
             return null;
         });
     }
+
+    @Test
+    public void currencyAndBalanceMustNotChange() {
+        Date startDate = Date.from(LocalDate.now().plusDays(30).atStartOfDay(ZoneOffset.UTC).toInstant());
+        AssetSavingState inputState = new AssetSavingState(TestUtils.PartyA.getParty(), TestUtils.AccountB, startDate,
+                Currencies.POUNDS(1), new UniqueIdentifier(), Currencies.POUNDS(5), 5);
+        AssetSavingState inDollars = new AssetSavingState(TestUtils.PartyC.getParty(), TestUtils.AccountD, startDate,
+                Currencies.DOLLARS(1), inputState.getLinearId(), Currencies.POUNDS(5), null);
+        AssetSavingState rewritten = new AssetSavingState(TestUtils.PartyC.getParty(), TestUtils.AccountD, startDate,
+                Currencies.POUNDS(1), inputState.getLinearId(), Currencies.POUNDS(500), null);
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inDollars);
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey(), TestUtils.PartyC.getPublicKey(), TestUtils.AccountD.getOwningKey()), new AssetSavingContract.Commands.Transfer());
+                return tx.failsWith("The currency of the accumulation must not be changed.");
+            });
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, rewritten);
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey(), TestUtils.PartyC.getPublicKey(), TestUtils.AccountD.getOwningKey()), new AssetSavingContract.Commands.Transfer());
+                return tx.failsWith("The balance must not be changed.");
+            });
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inputState.withNewBankAndDateAndAccumulation(TestUtils.PartyC.getParty(), TestUtils.AccountD, startDate, 2L));
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey(), TestUtils.PartyC.getPublicKey(), TestUtils.AccountD.getOwningKey()), new AssetSavingContract.Commands.Transfer());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
 }
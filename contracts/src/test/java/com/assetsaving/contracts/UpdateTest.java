@@ -207,4 +207,61 @@ public class UpdateTest {
         });
     }
 
+    @Test
+    public void manyLinearIdsMayBeUpdatedTogether() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState assetSavingState = new AssetSavingState(TestUtils.PartyA.getParty(), TestUtils.AccountB, dateFormat.parse("2021-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+        AssetSavingState otherAssetSavingState = new AssetSavingState(TestUtils.PartyA.getParty(), TestUtils.AccountC, dateFormat.parse("2021-12-25"), Currencies.POUNDS(1), new UniqueIdentifier());
+        ledger(ledgerServices, l->{
+            l.transaction(tx-> {
+                tx.input(AssetSavingContract.ID, assetSavingState);
+                tx.input(AssetSavingContract.ID, otherAssetSavingState);
+                tx.output(AssetSavingContract.ID, assetSavingState.withNewAccumulation(10L));
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey(), TestUtils.AccountC.getOwningKey()), new AssetSavingContract.Commands.Update());
+                return tx.failsWith("An AssetSaving update transaction should only create one output state.");
+            });
+            l.transaction(tx-> {
+                tx.input(AssetSavingContract.ID, assetSavingState);
+                tx.input(AssetSavingContract.ID, otherAssetSavingState);
+                tx.output(AssetSavingContract.ID, assetSavingState.withNewAccumulation(10L));
+                tx.output(AssetSavingContract.ID, otherAssetSavingState.withNewAccumulation(20L));
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey()), new AssetSavingContract.Commands.Update());
+                return tx.failsWith("Both bank and customer together only may sign AssetSaving update transaction.");
+            });
+            l.transaction(tx-> {
+                tx.input(AssetSavingContract.ID, assetSavingState);
+                tx.input(AssetSavingContract.ID, otherAssetSavingState);
+                tx.output(AssetSavingContract.ID, assetSavingState.withNewAccumulation(10L));
+                tx.output(AssetSavingContract.ID, otherAssetSavingState.withNewAccumulation(20L));
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey(), TestUtils.AccountC.getOwningKey()), new AssetSavingContract.Commands.Update());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void currencyMustNotChange() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState inputState = new AssetSavingState(TestUtils.PartyA.getParty(), TestUtils.AccountB, dateFormat.parse("2021-12-25"),
+                Currencies.POUNDS(1), new UniqueIdentifier(), Currencies.POUNDS(5), 5);
+        AssetSavingState inDollars = new AssetSavingState(TestUtils.PartyA.getParty(), TestUtils.AccountB, inputState.getStartDate(),
+                Currencies.DOLLARS(2), inputState.getLinearId(), Currencies.POUNDS(5), 5);
+
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inDollars);
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey()), new AssetSavingContract.Commands.Update());
+                return tx.failsWith("The currency of the accumulation must not be changed.");
+            });
+            l.transaction(tx -> {
+                tx.input(AssetSavingContract.ID, inputState);
+                tx.output(AssetSavingContract.ID, inputState.withNewAccumulation(2L));
+                tx.command(Arrays.asList(TestUtils.PartyA.getPublicKey(), TestUtils.AccountB.getOwningKey()), new AssetSavingContract.Commands.Update());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
 }
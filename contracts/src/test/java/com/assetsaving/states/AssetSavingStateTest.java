@@ -1,10 +1,13 @@
 package com.assetsaving.states;
 
+import com.assetsaving.schemas.AssetSavingSchemaV1;
 import net.corda.core.contracts.Amount;
 import net.corda.core.contracts.LinearState;
 import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.CryptoUtils;
 import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.QueryableState;
 import net.corda.finance.Currencies;
 import org.junit.Test;
 
@@ -15,6 +18,7 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 import static com.assetsaving.states.TestUtils.*;
 import static groovy.util.GroovyTestCase.assertEquals;
@@ -73,6 +77,25 @@ public class AssetSavingStateTest {
         assert(LinearState.class.isAssignableFrom(AssetSavingState.class));
     }
 
+    @Test
+    public void isQueryableState() {
+        assert(QueryableState.class.isAssignableFrom(AssetSavingState.class));
+    }
+
+    @Test
+    public void mapsIndexedColumnsToSchemaV1() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountB, dateFormat.parse("2021-12-12"), Currencies.POUNDS(10), new UniqueIdentifier());
+        AssetSavingSchemaV1.PersistentAssetSaving persistent = (AssetSavingSchemaV1.PersistentAssetSaving) assetSavingState.generateMappedObject(new AssetSavingSchemaV1());
+
+        assertEquals(PartyA.getParty().getName().toString(), persistent.getBankName());
+        assertEquals(CryptoUtils.toStringShort(AccountB.getOwningKey()), persistent.getCustomerKeyHash());
+        assertEquals(dateFormat.parse("2021-12-12").toInstant(), persistent.getStartDate());
+        assertEquals("GBP", persistent.getCurrencyCode());
+        assertEquals(1000L, persistent.getAccumulation());
+        assertEquals(assetSavingState.getLinearId().getId(), persistent.getLinearId());
+    }
+
     @Test
     public void hasLinearIdFieldOfCorrectType() throws NoSuchFieldException {
         // Does the linearId field exist?
@@ -117,6 +140,21 @@ public class AssetSavingStateTest {
         assertEquals(Currencies.DOLLARS(200L), assetSavingState.withNewBankAndDateAndAccumulation(PartyB.getParty(), AccountB, dateFormat.parse("2021-12-25"), 200L).getAccumulation());
     }
 
+    @Test
+    public void accumulatedAddsOnePeriodToTheBalance() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        AssetSavingState assetSavingState = new AssetSavingState(PartyA.getParty(), AccountA, dateFormat.parse("2021-12-12"), Currencies.POUNDS(10), new UniqueIdentifier());
+        assertEquals(dateFormat.parse("2021-12-12").toInstant(), assetSavingState.getNextAccumulationDate());
+        assertEquals(Currencies.POUNDS(0), assetSavingState.getBalance());
+
+        AssetSavingState accumulated = assetSavingState.accumulated().accumulated();
+        assertEquals(Currencies.POUNDS(20), accumulated.getBalance());
+        assertEquals(2, accumulated.getAccumulatedPeriods());
+        assertEquals(dateFormat.parse("2022-02-12").toInstant(), accumulated.getNextAccumulationDate());
+        assertEquals(assetSavingState.getLinearId(), accumulated.getLinearId());
+    }
+
     @Test
     public void correctConstructorsExist() {
         // Public constructor for new states
@@ -7,6 +7,7 @@ import net.corda.testing.core.TestIdentity;
 import net.corda.testing.driver.DriverParameters;
 import net.corda.testing.driver.NodeHandle;
 import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.node.NotarySpec;
 import org.junit.Test;
 
 import java.util.List;
@@ -17,10 +18,13 @@ import static org.junit.Assert.assertEquals;
 public class DriverBasedTest {
     private final TestIdentity bankA = new TestIdentity(new CordaX500Name("BankA", "", "GB"));
     private final TestIdentity bankB = new TestIdentity(new CordaX500Name("BankB", "", "US"));
+    private final CordaX500Name notary = new CordaX500Name("Notary", "London", "GB");
+    private final CordaX500Name notary2 = new CordaX500Name("Notary2", "London", "GB");
 
     @Test
     public void nodeTest() {
-        driver(new DriverParameters().withIsDebug(true).withStartNodesInProcess(true), dsl -> {
+        driver(new DriverParameters().withIsDebug(true).withStartNodesInProcess(true).withNotarySpecs(ImmutableList.of(
+                new NotarySpec(notary, false), new NotarySpec(notary2, false))), dsl -> {
             // Start a pair of nodes and wait for them both to be ready.
             List<CordaFuture<NodeHandle>> handleFutures = ImmutableList.of(
                     dsl.startNode(new NodeParameters().withProvidedName(bankA.getName())),
@@ -38,6 +42,9 @@ public class DriverBasedTest {
                 // and other important metrics to ensure that your CorDapp is working as intended.
                 assertEquals(partyAHandle.getRpc().wellKnownPartyFromX500Name(bankB.getName()).getName(), bankB.getName());
                 assertEquals(partyBHandle.getRpc().wellKnownPartyFromX500Name(bankA.getName()).getName(), bankA.getName());
+
+                // Both notaries are on the network map, for NotarySelector to choose from.
+                assertEquals(2, partyAHandle.getRpc().notaryIdentities().size());
             } catch (Exception e) {
                 throw new RuntimeException("Caught exception during test: ", e);
             }
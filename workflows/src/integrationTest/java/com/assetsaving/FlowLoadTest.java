@@ -0,0 +1,231 @@
+package com.assetsaving;
+
+import com.assetsaving.flows.CancelFlow;
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.TransferFlow;
+import com.assetsaving.flows.UpdateFlow;
+import com.assetsaving.states.AssetSavingState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.node.NotarySpec;
+import net.corda.testing.node.TestCordapp;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static net.corda.testing.driver.Driver.driver;
+
+/**
+ * Load harness for the four flows. It starts a notary, BankA and BankB in-process and drives a
+ * weighted mix of issue, update, transfer and cancel from BankA at a fixed start rate, with at most
+ * load.concurrency flows in flight. It writes the TPS, latency percentiles and failure reasons per
+ * flow as JSON.
+ *
+ * Disabled unless -Dload.enabled=true, e.g.
+ * ./gradlew :workflows:integrationTest --tests com.assetsaving.FlowLoadTest -Dload.enabled=true -Dload.rate=50
+ *
+ * load.notaries sets how many notaries the network runs, 2 by default, to measure how
+ * notarisation throughput scales with them.
+ *
+ * Latency is measured from the moment a flow was due to start, so time spent waiting for a free
+ * slot counts against it.
+ */
+public class FlowLoadTest {
+    private static final String ISSUE = "issue";
+    private static final String UPDATE = "update";
+    private static final String TRANSFER = "transfer";
+    private static final String CANCEL = "cancel";
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowLoadTest.class);
+
+    private final TestIdentity bankA = new TestIdentity(new CordaX500Name("BankA", "London", "GB"));
+    private final TestIdentity bankB = new TestIdentity(new CordaX500Name("BankB", "New York", "US"));
+
+    private final boolean enabled = Boolean.getBoolean("load.enabled");
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 60);
+    private final int concurrency = Integer.getInteger("load.concurrency", 16);
+    // Flows started per second.
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "20"));
+    // Relative weights of the flows.
+    private final String mix = System.getProperty("load.mix", "issue=4,update=3,transfer=1,cancel=2");
+    // Number of distinct customer accounts the issued savings are spread over.
+    private final int customers = Integer.getInteger("load.customers", 50);
+    private final String output = System.getProperty("load.output", "build/load/flow-load.json");
+    // Number of non-validating notaries, to compare notarisation throughput across counts.
+    private final int notaries = Integer.getInteger("load.notaries", 2);
+
+    private final String startDate = new SimpleDateFormat("yyyy-MM-dd")
+            .format(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30)));
+
+    @Test
+    public void flowLoad() {
+        Assume.assumeTrue("Set -Dload.enabled=true to run the load harness", enabled);
+
+        driver(new DriverParameters().withStartNodesInProcess(true).withNotarySpecs(notarySpecs()).withCordappsForAllNodes(ImmutableList.of(
+                TestCordapp.findCordapp("com.assetsaving.contracts"),
+                TestCordapp.findCordapp("com.assetsaving.flows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.contracts"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"))), dsl -> {
+            try {
+                NodeHandle bankAHandle = dsl.startNode(new NodeParameters().withProvidedName(bankA.getName())).get();
+                dsl.startNode(new NodeParameters().withProvidedName(bankB.getName())).get();
+                run(bankAHandle.getRpc());
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during load run: ", e);
+            }
+            return null;
+        });
+    }
+
+    private List<NotarySpec> notarySpecs() {
+        List<NotarySpec> specs = new ArrayList<>();
+        for (int i = 1; i <= notaries; i++) {
+            specs.add(new NotarySpec(new CordaX500Name(i == 1 ? "Notary" : "Notary" + i, "London", "GB"), false));
+        }
+        return specs;
+    }
+
+    private void run(CordaRPCOps rpc) throws Exception {
+        Party newBank = rpc.wellKnownPartyFromX500Name(bankB.getName());
+        NavigableMap<Integer, String> weights = parseMix(mix);
+        int totalWeight = weights.lastKey();
+
+        Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+        for (String flow : Arrays.asList(ISSUE, UPDATE, TRANSFER, CANCEL)) {
+            recorders.put(flow, new LatencyRecorder(flow));
+        }
+        // Savings still held by BankA and not in use by a running flow.
+        Queue<Saving> live = new ConcurrentLinkedQueue<>();
+        Semaphore slots = new Semaphore(concurrency);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        Random random = new Random(42);
+
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        for (int n = 0; ; n++) {
+            long due = start + n * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            slots.acquire();
+
+            String picked = weights.higherEntry(random.nextInt(totalWeight)).getValue();
+            Saving saving = picked.equals(ISSUE) ? null : live.poll();
+            String flow = saving == null ? ISSUE : picked;
+            int sequence = n;
+            workers.execute(() -> {
+                try {
+                    execute(rpc, newBank, flow, saving, sequence, live);
+                    recorders.get(flow).success(System.nanoTime() - due);
+                } catch (Exception e) {
+                    // The report counts every failure by reason; the first one of each flow is logged in full.
+                    if (recorders.get(flow).failure(e)) {
+                        logger.warn("First {} failure of the load run", flow, e);
+                    }
+                    if (saving != null) {
+                        live.add(saving);
+                    }
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.MINUTES);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        String report = report(recorders, elapsedSeconds);
+        Path path = Paths.get(output);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, report.getBytes(StandardCharsets.UTF_8));
+        System.out.println(report);
+    }
+
+    private void execute(CordaRPCOps rpc, Party newBank, String flow, Saving saving, int sequence,
+                         Queue<Saving> live) throws Exception {
+        switch (flow) {
+            case ISSUE:
+                String customer = "customer-" + (sequence % customers);
+                SignedTransaction stx = rpc.startFlowDynamic(IssueFlow.InitiatorFlow.class, customer, startDate, 100L)
+                        .getReturnValue().get();
+                live.add(new Saving(stx.getTx().outputsOfType(AssetSavingState.class).get(0).getLinearId(), customer));
+                break;
+            case UPDATE:
+                // The sequence makes every new accumulation differ from the current one.
+                rpc.startFlowDynamic(UpdateFlow.InitiatorFlow.class, saving.linearId, 200L + sequence, saving.customer)
+                        .getReturnValue().get();
+                live.add(saving);
+                break;
+            case TRANSFER:
+                rpc.startFlowDynamic(TransferFlow.InitiatorFlow.class, saving.linearId, newBank, saving.customer,
+                        "moved-" + (sequence % customers), startDate, 100L).getReturnValue().get();
+                break;
+            default:
+                rpc.startFlowDynamic(CancelFlow.InitiatorFlow.class, saving.linearId, saving.customer)
+                        .getReturnValue().get();
+        }
+    }
+
+    private String report(Map<String, LatencyRecorder> recorders, double elapsedSeconds) {
+        StringJoiner flows = new StringJoiner(",", "[", "]");
+        for (LatencyRecorder recorder : recorders.values()) {
+            flows.add(recorder.toJson(elapsedSeconds));
+        }
+        return String.format(Locale.ROOT,
+                "{\"durationSeconds\":%d,\"concurrency\":%d,\"targetRate\":%.2f,\"mix\":\"%s\",\"notaries\":%d,\"elapsedSeconds\":%.2f,\"flows\":%s}",
+                durationSeconds, concurrency, rate, mix, notaries, elapsedSeconds, flows);
+    }
+
+    // Maps the running total of the weights to each flow, for a weighted pick with higherEntry.
+    private static NavigableMap<Integer, String> parseMix(String mix) {
+        NavigableMap<Integer, String> weights = new TreeMap<>();
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            String[] flowAndWeight = entry.trim().split("=");
+            int weight = Integer.parseInt(flowAndWeight[1].trim());
+            if (weight > 0) {
+                total += weight;
+                weights.put(total, flowAndWeight[0].trim());
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("load.mix has no positive weight: " + mix);
+        }
+        return weights;
+    }
+
+    private static final class Saving {
+        private final UniqueIdentifier linearId;
+        private final String customer;
+
+        private Saving(UniqueIdentifier linearId, String customer) {
+            this.linearId = linearId;
+            this.customer = customer;
+        }
+    }
+}
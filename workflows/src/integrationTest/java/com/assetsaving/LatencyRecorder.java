@@ -0,0 +1,98 @@
+package com.assetsaving;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collects the latencies of one flow type during a load run and summarises them as JSON.
+ */
+class LatencyRecorder {
+
+    // Distinct failure reasons kept per flow; any further ones are counted together.
+    private static final int MAX_FAILURE_REASONS = 20;
+    private static final int MAX_REASON_LENGTH = 200;
+    private static final String OTHER_REASONS = "other";
+
+    private final String flow;
+    private long[] latencies = new long[1024];
+    private int count = 0;
+    private int failures = 0;
+    private final Map<String, Integer> failureReasons = new LinkedHashMap<>();
+
+    LatencyRecorder(String flow) {
+        this.flow = flow;
+    }
+
+    synchronized void success(long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+    }
+
+    /**
+     * Counts the failure under its reason. True for the first failure of the flow, so the caller
+     * can log it in full.
+     */
+    synchronized boolean failure(Throwable error) {
+        String reason = reason(error);
+        if (!failureReasons.containsKey(reason) && failureReasons.size() >= MAX_FAILURE_REASONS) {
+            reason = OTHER_REASONS;
+        }
+        failureReasons.merge(reason, 1, Integer::sum);
+        return ++failures == 1;
+    }
+
+    synchronized String toJson(double elapsedSeconds) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT,
+                "{\"flow\":\"%s\",\"completed\":%d,\"failed\":%d,\"tps\":%.2f,"
+                        + "\"latencyMillis\":{\"min\":%.2f,\"p50\":%.2f,\"p90\":%.2f,\"p99\":%.2f,\"p999\":%.2f,\"max\":%.2f},"
+                        + "\"failureReasons\":%s}",
+                flow, count, failures, count / elapsedSeconds,
+                millis(sorted, 0.0), millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99),
+                millis(sorted, 0.999), millis(sorted, 1.0), reasonsJson());
+    }
+
+    private String reasonsJson() {
+        StringJoiner reasons = new StringJoiner(",", "{", "}");
+        failureReasons.forEach((reason, times) -> reasons.add("\"" + escape(reason) + "\":" + times));
+        return reasons.toString();
+    }
+
+    // The flow's own exception rather than the future's wrapper, with its message cut short.
+    private static String reason(Throwable error) {
+        Throwable cause = error instanceof ExecutionException && error.getCause() != null ? error.getCause() : error;
+        String reason = cause.getMessage() == null ? cause.getClass().getName()
+                : cause.getClass().getName() + ": " + cause.getMessage();
+        return reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    // Nearest-rank percentile, in milliseconds.
+    private static double millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))] / 1_000_000.0;
+    }
+}
@@ -1,5 +1,271 @@
 package com.assetsaving.flows;
 
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.contracts.AssetSavingContract.Commands.Accumulate;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.services.AccumulationBatcher;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.LinearIdTurn;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TimeWindow;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import org.jetbrains.annotations.NotNull;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Periodic accumulation of AssetSavingStates, driven by the node scheduler.
+ *
+ * The scheduler starts a ScheduledFlow for every state that falls due. It only hands the state
+ * over to the AccumulationBatcher, which starts one InitiatorFlow for everything due in the same
+ * tick. The InitiatorFlow then builds one transaction per customer host.
+ *
+ * A chunk that fails, e.g. on a notary conflict or an unreachable host, leaves the other chunks of
+ * the batch alone. Its states are reported back to their ScheduledFlows, which submit them again
+ * while they are still unconsumed, since the scheduler fires every StateRef only once.
+ */
 public class AccumulateFlow {
-    // Implement if you can afford it.
+
+    @SchedulableFlow
+    public static class ScheduledFlow extends FlowLogic<Void> {
+
+        static final int MAX_ATTEMPTS = 10;
+        static final Duration RETRY_INTERVAL = Duration.ofSeconds(30);
+
+        private final StateRef stateRef;
+
+        public ScheduledFlow(StateRef stateRef) {
+            this.stateRef = stateRef;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            AssetSavingState state = getServiceHub().<AssetSavingState>toStateAndRef(stateRef).getState().getData();
+            // Every participant's node schedules the state; only the bank accumulates it.
+            if (!state.getBank().equals(getOurIdentity())) {
+                return null;
+            }
+            // Waiting here until the state is accumulated keeps the retries in our checkpoint, so
+            // they survive a restart.
+            for (int attempt = 1; ; attempt++) {
+                if (await(new SubmitToBatch(getServiceHub().cordaService(AccumulationBatcher.class), stateRef))) {
+                    return null;
+                }
+                // A state consumed in the meantime, e.g. by an update, schedules its successor itself.
+                if (!isUnconsumed()) {
+                    return null;
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    getLogger().error("Gave up accumulating AssetSaving {} after {} attempts",
+                            state.getLinearId(), MAX_ATTEMPTS);
+                    return null;
+                }
+                getLogger().warn("Accumulation of AssetSaving {} failed, retrying in {}", state.getLinearId(), RETRY_INTERVAL);
+                sleep(RETRY_INTERVAL);
+            }
+        }
+
+        private boolean isUnconsumed() {
+            QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                    .withStateRefs(Collections.singletonList(stateRef));
+            return !getServiceHub().getVaultService().queryBy(AssetSavingState.class, criteria).getStates().isEmpty();
+        }
+    }
+
+    private static class SubmitToBatch implements FlowExternalAsyncOperation<Boolean> {
+        private final AccumulationBatcher batcher;
+        private final StateRef stateRef;
+
+        private SubmitToBatch(AccumulationBatcher batcher, StateRef stateRef) {
+            this.batcher = batcher;
+            this.stateRef = stateRef;
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Boolean> execute(@NotNull String deduplicationId) {
+            return batcher.submit(stateRef);
+        }
+    }
+
+    /**
+     * Accumulates the states that are due and returns the transaction of each one accumulated.
+     * States skipped or in a chunk that failed are left out.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    @StartableByService
+    public static class InitiatorFlow extends FlowLogic<Map<StateRef, SecureHash>> {
+
+        private final List<StateRef> stateRefs;
+
+        public InitiatorFlow(List<StateRef> stateRefs) {
+            this.stateRefs = stateRefs;
+        }
+
+        @Suspendable
+        @Override
+        public Map<StateRef, SecureHash> call() throws FlowException {
+            final Instant now = getServiceHub().getClock().instant();
+
+            // Take the turns on the states no other flow holds. The busy ones are left out, and
+            // their ScheduledFlows submit them again.
+            Set<UniqueIdentifier> held = LinearIdTurn.takeFree(this, AssetSavingLookup.linearIds(due(now)));
+            try {
+                // Read the states again under the turns, in case one was consumed in between. Only the
+                // linearIds of each chunk are kept from here on, so the checkpoints hold no states.
+                List<List<UniqueIdentifier>> chunks = AssetSavingLookup.planChunks(
+                        getServiceHub().cordaService(AccountCacheService.class), heldAndDue(held, now));
+
+                Map<StateRef, SecureHash> accumulated = new LinkedHashMap<>();
+                for (List<UniqueIdentifier> chunk : chunks) {
+                    try {
+                        SignedTransaction transaction = accumulateChunk(chunk, now);
+                        for (StateRef input : transaction.getTx().getInputs()) {
+                            accumulated.put(input, transaction.getId());
+                        }
+                        LinearIdTurn.leaveAll(this, chunk, true);
+                    } catch (KilledFlowException e) {
+                        throw e;
+                    } catch (FlowException | RuntimeException e) {
+                        // The ScheduledFlows of these states submit them again.
+                        getLogger().warn("Could not accumulate AssetSavings " + chunk, e);
+                        LinearIdTurn.leaveAll(this, chunk, false);
+                    }
+                    held.removeAll(chunk);
+                }
+                return accumulated;
+            } finally {
+                LinearIdTurn.leaveAll(this, held, false);
+            }
+        }
+
+        private List<StateAndRef<AssetSavingState>> heldAndDue(Set<UniqueIdentifier> held, Instant now) {
+            List<StateAndRef<AssetSavingState>> heldAndDue = new ArrayList<>();
+            for (StateAndRef<AssetSavingState> stateAndRef : due(now)) {
+                if (held.contains(stateAndRef.getState().getData().getLinearId())) {
+                    heldAndDue.add(stateAndRef);
+                }
+            }
+            return heldAndDue;
+        }
+
+        // The states we hold that are unconsumed and due. States consumed since they were scheduled are skipped.
+        private List<StateAndRef<AssetSavingState>> due(Instant now) {
+            QueryCriteria queryCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                    .withStateRefs(stateRefs);
+            List<StateAndRef<AssetSavingState>> unconsumed = getServiceHub().getVaultService().queryBy(AssetSavingState.class,
+                    queryCriteria, new PageSpecification(DEFAULT_PAGE_NUM, Math.max(stateRefs.size(), 1))).getStates();
+
+            List<StateAndRef<AssetSavingState>> due = new ArrayList<>();
+            for (StateAndRef<AssetSavingState> stateAndRef : unconsumed) {
+                AssetSavingState state = stateAndRef.getState().getData();
+                if (!state.getBank().equals(getOurIdentity()) || state.getNextAccumulationDate().isAfter(now)) {
+                    continue;
+                }
+                if (!state.getBalance().getToken().equals(state.getAccumulation().getToken())) {
+                    getLogger().warn("AssetSaving {} has a balance in another currency than its accumulation", state.getLinearId());
+                    continue;
+                }
+                due.add(stateAndRef);
+            }
+            return due;
+        }
+
+        @Suspendable
+        private SignedTransaction accumulateChunk(List<UniqueIdentifier> chunk, Instant now) throws FlowException {
+            // Built and signed without suspending, so the checkpoints below hold no builder.
+            SignedTransaction partiallySignedTransaction = buildAndSign(chunk, now);
+            return CollectHostSignaturesFlow.collectAndFinalise(this, partiallySignedTransaction);
+        }
+
+        private SignedTransaction buildAndSign(List<UniqueIdentifier> linearIds, Instant now) throws FlowException {
+            // Our turns keep the states of the chunk as they were planned, so they are simply read again.
+            List<StateAndRef<AssetSavingState>> chunk = AssetSavingLookup.unconsumedByLinearIds(getServiceHub(), linearIds);
+            final TransactionBuilder builder = new TransactionBuilder(NotarySelector.forInput(chunk.get(0)));
+
+            Set<PublicKey> requiredSigners = new LinkedHashSet<>();
+            for (StateAndRef<AssetSavingState> inputStateAndRef : chunk) {
+                AssetSavingState inputState = inputStateAndRef.getState().getData();
+                for (AbstractParty participant : inputState.getParticipants()) {
+                    requiredSigners.add(participant.getOwningKey());
+                }
+                builder.addInputState(inputStateAndRef);
+                builder.addOutputState(inputState.accumulated(), AssetSavingContract.ID);
+            }
+            builder.addCommand(new Accumulate(), new ArrayList<>(requiredSigners));
+            // The contract checks every accumulation is due against the start of the time window.
+            builder.setTimeWindow(TimeWindow.fromOnly(now));
+
+            // Verify and sign the transaction, with the customers' keys too when we host their accounts
+            builder.verify(getServiceHub());
+            return getServiceHub().signInitialTransaction(builder,
+                    CollectHostSignaturesFlow.ourKeys(getServiceHub(), requiredSigners));
+        }
+    }
+
+    @InitiatedBy(AccumulateFlow.InitiatorFlow.class)
+    public static class Responder extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+        private SecureHash txWeJustSignedId;
+
+        public Responder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        require.using("This must be an AssetSaving accumulate transaction",
+                                stx.getTx().getCommands().stream().allMatch(command -> command.getValue() instanceof Accumulate));
+                        return null;
+                    });
+                    // Once the transaction has verified, initialize txWeJustSignedID variable.
+                    txWeJustSignedId = stx.getId();
+                }
+            }
+
+            // Create a sign transaction flow
+            SignTxFlow signTxFlow = new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker());
+
+            // Run the sign transaction flow to sign the transaction
+            subFlow(signTxFlow);
+
+            // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
+
+            return null;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package com.assetsaving.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.contracts.AssetSavingContract.Commands.Issue;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.InstanceGenerateFlow;
+import com.assetsaving.flows.utilities.IssueRow;
+import com.assetsaving.flows.utilities.KeyForAccountFlow;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.states.AssetSavingState;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Issues many AssetSavingStates at once. The rows are packed into chunks and every chunk is
+ * one multi-output transaction, so a chunk costs one notarisation and one signature round trip
+ * per customer host instead of one per saving plan.
+ */
+public class BatchIssueFlow {
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<List<SecureHash>> {
+
+        private final List<IssueRow> rows;
+        private final int chunkSize;
+
+        public InitiatorFlow(List<IssueRow> rows) {
+            this(rows, AssetSavingLookup.MAX_STATES_PER_TRANSACTION);
+        }
+
+        public InitiatorFlow(List<IssueRow> rows, int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("The chunk size should be larger than 0.");
+            }
+            this.rows = rows;
+            this.chunkSize = chunkSize;
+        }
+
+        @Suspendable
+        @Override
+        public List<SecureHash> call() throws FlowException {
+            // Each row goes to the notary IssueFlow would pick for its customer.
+            Map<Party, List<IssueRow>> rowsByNotary = new LinkedHashMap<>();
+            for (IssueRow row : rows) {
+                rowsByNotary.computeIfAbsent(NotarySelector.forIssue(getServiceHub(), row.getCustomer()),
+                        notary -> new ArrayList<>()).add(row);
+            }
+
+            List<SecureHash> transactionIds = new ArrayList<>();
+            for (Map.Entry<Party, List<IssueRow>> group : rowsByNotary.entrySet()) {
+                List<IssueRow> notaryRows = group.getValue();
+                for (int from = 0; from < notaryRows.size(); from += chunkSize) {
+                    List<IssueRow> chunk = notaryRows.subList(from, Math.min(from + chunkSize, notaryRows.size()));
+                    transactionIds.add(issueChunk(chunk, group.getKey()));
+                }
+            }
+            return transactionIds;
+        }
+
+        @Suspendable
+        private SecureHash issueChunk(List<IssueRow> chunk, Party notary) throws FlowException {
+            // Resolve the account key of every row first. Creating an account or a key suspends, so only
+            // the keys are kept across it; the states are generated after the last one, and the builder
+            // stays in buildAndSign, which does not suspend.
+            List<AnonymousParty> customerAccounts = new ArrayList<>(chunk.size());
+            for (IssueRow row : chunk) {
+                AccountInfo account = getOrCreateAccount(row.getCustomer());
+                customerAccounts.add(subFlow(new KeyForAccountFlow(account)));
+            }
+            List<AssetSavingState> states = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                IssueRow row = chunk.get(i);
+                states.add(subFlow(new InstanceGenerateFlow(row.getCurrency(), getOurIdentity(),
+                        customerAccounts.get(i), parseDate(row.getStartDate()), row.getAccumulation())));
+            }
+            SignedTransaction partiallySignedTransaction = buildAndSign(states, notary);
+
+            // Each remote customer host counter-signs the whole chunk once.
+            return CollectHostSignaturesFlow.collectAndFinalise(this, partiallySignedTransaction).getId();
+        }
+
+        private SignedTransaction buildAndSign(List<AssetSavingState> states, Party notary) throws FlowException {
+            final TransactionBuilder builder = new TransactionBuilder(notary);
+
+            // The bank signs once, and every customer key of the chunk signs as well.
+            Set<PublicKey> requiredSigners = new LinkedHashSet<>();
+            requiredSigners.add(getOurIdentity().getOwningKey());
+            for (AssetSavingState state : states) {
+                builder.addOutputState(state, AssetSavingContract.ID);
+                requiredSigners.add(state.getCustomer().getOwningKey());
+            }
+            builder.addCommand(new Issue(), new ArrayList<>(requiredSigners));
+
+            // Verify and sign it with our KeyPair, and with the keys of the customer accounts we host.
+            builder.verify(getServiceHub());
+            return getServiceHub().signInitialTransaction(builder,
+                    CollectHostSignaturesFlow.ourKeys(getServiceHub(), requiredSigners));
+        }
+
+        @Suspendable
+        private AccountInfo getOrCreateAccount(String accountName) throws FlowException {
+            StateAndRef<AccountInfo> account = getServiceHub().cordaService(AccountCacheService.class)
+                    .accountByName(accountName, getOurIdentity());
+            if (account != null) {
+                return account.getState().getData();
+            }
+            StateAndRef<AccountInfo> created = (StateAndRef<AccountInfo>) subFlow(new CreateAccount(accountName));
+            return created.getState().getData();
+        }
+
+        private Date parseDate(String date) throws FlowException {
+            try {
+                return new SimpleDateFormat("yyyy-MM-dd").parse(date);
+            } catch (ParseException e) {
+                throw new FlowException("Incorrect start date " + date + ". Please set it as yyyy-MM-dd.", e);
+            }
+        }
+    }
+
+    @InitiatedBy(BatchIssueFlow.InitiatorFlow.class)
+    public static class ResponderFlow extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+        private SecureHash txWeJustSignedId;
+
+        public ResponderFlow(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+
+            class SignTxFlow extends SignTransactionFlow {
+
+                private SignTxFlow(FlowSession flowSession, ProgressTracker progressTracker) {
+                    super(flowSession, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(req -> {
+                        req.using("This must be an AssetSavingState transaction",
+                                stx.getTx().outputsOfType(AssetSavingState.class).size() == stx.getTx().getOutputs().size());
+                        return null;
+                    });
+                    // Once the transaction has verified, initialize txWeJustSignedID variable.
+                    txWeJustSignedId = stx.getId();
+                }
+            }
+
+            // Create a sign transaction flow
+            SignTxFlow signTxFlow = new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker());
+
+            // Run the sign transaction flow to sign the whole chunk at once
+            subFlow(signTxFlow);
+
+            // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.assetsaving.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.contracts.AssetSavingContract.Commands.Cancel;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.LinearIdTurn;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.util.*;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Cancels many AssetSavingStates. All states are fetched with one vault query and grouped by the
+ * node hosting the customer account; every group becomes one transaction.
+ */
+public class BulkCancelFlow {
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<List<SecureHash>> {
+
+        private final List<UniqueIdentifier> stateLinearIds;
+
+        public InitiatorFlow(List<UniqueIdentifier> stateLinearIds) {
+            this.stateLinearIds = stateLinearIds;
+        }
+
+        @Suspendable
+        @Override
+        public List<SecureHash> call() throws FlowException {
+            // Take the turns on all the states before reading them, as BulkUpdateFlow does.
+            Set<UniqueIdentifier> held = new LinkedHashSet<>(stateLinearIds);
+            LinearIdTurn.takeAll(this, held);
+            try {
+                // Retrieve all the AssetSavingStates from the vault at once. Only the planned linearIds
+                // are held across the chunks; each chunk reads its states again when it is built.
+                List<List<UniqueIdentifier>> chunks = AssetSavingLookup.planChunks(
+                        getServiceHub().cordaService(AccountCacheService.class),
+                        AssetSavingLookup.unconsumedByLinearIds(getServiceHub(), new LinkedHashSet<>(stateLinearIds)));
+
+                List<SecureHash> transactionIds = new ArrayList<>();
+                for (List<UniqueIdentifier> chunk : chunks) {
+                    transactionIds.add(cancelChunk(chunk));
+                    LinearIdTurn.leaveAll(this, chunk, true);
+                    held.removeAll(chunk);
+                }
+                return transactionIds;
+            } finally {
+                LinearIdTurn.leaveAll(this, held, false);
+            }
+        }
+
+        @Suspendable
+        private SecureHash cancelChunk(List<UniqueIdentifier> chunk) throws FlowException {
+            SignedTransaction partiallySignedTransaction = buildAndSign(chunk);
+            return CollectHostSignaturesFlow.collectAndFinalise(this, partiallySignedTransaction).getId();
+        }
+
+        private SignedTransaction buildAndSign(List<UniqueIdentifier> linearIds) throws FlowException {
+            List<StateAndRef<AssetSavingState>> chunk = AssetSavingLookup.unconsumedByLinearIds(getServiceHub(), linearIds);
+            final TransactionBuilder builder = new TransactionBuilder(NotarySelector.forInput(chunk.get(0)));
+
+            Set<PublicKey> requiredSigners = new LinkedHashSet<>();
+            for (StateAndRef<AssetSavingState> inputStateAndRefToCancel : chunk) {
+                AssetSavingState inputStateToCancel = inputStateAndRefToCancel.getState().getData();
+                if (!inputStateToCancel.getBank().equals(getOurIdentity())) {
+                    throw new FlowException("AssetSaving " + inputStateToCancel.getLinearId() + " is not held by our bank");
+                }
+                for (AbstractParty participant : inputStateToCancel.getParticipants()) {
+                    requiredSigners.add(participant.getOwningKey());
+                }
+                builder.addInputState(inputStateAndRefToCancel);
+            }
+            builder.addCommand(new Cancel(), new ArrayList<>(requiredSigners));
+
+            // Verify and sign the transaction, with the customers' keys too when we host their accounts
+            builder.verify(getServiceHub());
+            return getServiceHub().signInitialTransaction(builder,
+                    CollectHostSignaturesFlow.ourKeys(getServiceHub(), requiredSigners));
+        }
+    }
+
+    @InitiatedBy(BulkCancelFlow.InitiatorFlow.class)
+    public static class Responder extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+        private SecureHash txWeJustSignedId;
+
+        public Responder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        Boolean isOutputEmpty = stx.getTx().getOutputStates().size() == 0;
+                        require.using("This transaction must has no output.", isOutputEmpty);
+                        return null;
+                    });
+                    // Once the transaction has verified, initialize txWeJustSignedID variable.
+                    txWeJustSignedId = stx.getId();
+                }
+            }
+
+            // Create a sign transaction flow
+            SignTxFlow signTxFlow = new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker());
+
+            // Run the sign transaction flow to sign the transaction
+            subFlow(signTxFlow);
+
+            // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
+
+            return null;
+        }
+    }
+}
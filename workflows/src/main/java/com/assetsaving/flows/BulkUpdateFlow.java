@@ -0,0 +1,156 @@
+package com.assetsaving.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.contracts.AssetSavingContract.Commands.Update;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.LinearIdTurn;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.flows.utilities.UpdateRow;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.util.*;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Updates the accumulation of many AssetSavingStates. All states are fetched with one vault query
+ * and grouped by the node hosting the customer account; every group becomes one transaction.
+ */
+public class BulkUpdateFlow {
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<List<SecureHash>> {
+
+        private final List<UpdateRow> rows;
+
+        public InitiatorFlow(List<UpdateRow> rows) {
+            this.rows = rows;
+        }
+
+        @Suspendable
+        @Override
+        public List<SecureHash> call() throws FlowException {
+            Map<UniqueIdentifier, Long> newAccumulations = new LinkedHashMap<>();
+            for (UpdateRow row : rows) {
+                if (newAccumulations.put(row.getLinearId(), row.getNewAccumulation()) != null) {
+                    throw new FlowException("AssetSaving " + row.getLinearId() + " is updated more than once");
+                }
+            }
+
+            // Take the turns on all the states before reading them, so no lifecycle flow consumes one
+            // under us. Each chunk gives its turns back once it is final.
+            Set<UniqueIdentifier> held = new LinkedHashSet<>(newAccumulations.keySet());
+            LinearIdTurn.takeAll(this, held);
+            try {
+                // Retrieve all the AssetSavingStates from the vault at once, but keep only the linearIds
+                // of each chunk: the states are read again just before their chunk is built.
+                List<List<UniqueIdentifier>> chunks = AssetSavingLookup.planChunks(
+                        getServiceHub().cordaService(AccountCacheService.class),
+                        AssetSavingLookup.unconsumedByLinearIds(getServiceHub(), newAccumulations.keySet()));
+
+                List<SecureHash> transactionIds = new ArrayList<>();
+                for (List<UniqueIdentifier> chunk : chunks) {
+                    transactionIds.add(updateChunk(chunk, newAccumulations));
+                    LinearIdTurn.leaveAll(this, chunk, true);
+                    held.removeAll(chunk);
+                }
+                return transactionIds;
+            } finally {
+                LinearIdTurn.leaveAll(this, held, false);
+            }
+        }
+
+        @Suspendable
+        private SecureHash updateChunk(List<UniqueIdentifier> chunk, Map<UniqueIdentifier, Long> newAccumulations)
+                throws FlowException {
+            // The builder never lives across a suspension, only the signed chunk does.
+            SignedTransaction partiallySignedTransaction = buildAndSign(chunk, newAccumulations);
+            return CollectHostSignaturesFlow.collectAndFinalise(this, partiallySignedTransaction).getId();
+        }
+
+        private SignedTransaction buildAndSign(List<UniqueIdentifier> linearIds,
+                                               Map<UniqueIdentifier, Long> newAccumulations) throws FlowException {
+            // We hold the turns on the chunk, so its states are still the ones that were planned.
+            List<StateAndRef<AssetSavingState>> chunk = AssetSavingLookup.unconsumedByLinearIds(getServiceHub(), linearIds);
+            final TransactionBuilder builder = new TransactionBuilder(NotarySelector.forInput(chunk.get(0)));
+
+            Set<PublicKey> requiredSigners = new LinkedHashSet<>();
+            for (StateAndRef<AssetSavingState> inputStateAndRefToUpdate : chunk) {
+                AssetSavingState inputStateToUpdate = inputStateAndRefToUpdate.getState().getData();
+                if (!inputStateToUpdate.getBank().equals(getOurIdentity())) {
+                    throw new FlowException("AssetSaving " + inputStateToUpdate.getLinearId() + " is not held by our bank");
+                }
+                for (AbstractParty participant : inputStateToUpdate.getParticipants()) {
+                    requiredSigners.add(participant.getOwningKey());
+                }
+
+                // Add input and output states to flow using the TransactionBuilder.
+                builder.addInputState(inputStateAndRefToUpdate);
+                builder.addOutputState(inputStateToUpdate.withNewAccumulation(
+                        newAccumulations.get(inputStateToUpdate.getLinearId())), AssetSavingContract.ID);
+            }
+            builder.addCommand(new Update(), new ArrayList<>(requiredSigners));
+
+            // Verify and sign the transaction, with the customers' keys too when we host their accounts
+            builder.verify(getServiceHub());
+            return getServiceHub().signInitialTransaction(builder,
+                    CollectHostSignaturesFlow.ourKeys(getServiceHub(), requiredSigners));
+        }
+    }
+
+    @InitiatedBy(BulkUpdateFlow.InitiatorFlow.class)
+    public static class Responder extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+        private SecureHash txWeJustSignedId;
+
+        public Responder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        require.using("This must be an AssetSavingState transaction",
+                                stx.getTx().outputsOfType(AssetSavingState.class).size() == stx.getTx().getOutputs().size());
+                        return null;
+                    });
+                    // Once the transaction has verified, initialize txWeJustSignedID variable.
+                    txWeJustSignedId = stx.getId();
+                }
+            }
+
+            // Create a sign transaction flow
+            SignTxFlow signTxFlow = new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker());
+
+            // Run the sign transaction flow to sign the transaction
+            subFlow(signTxFlow);
+
+            // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
+
+            return null;
+        }
+    }
+}
@@ -2,26 +2,28 @@ package com.assetsaving.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
-import com.r3.corda.lib.accounts.workflows.UtilitiesKt;
-import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
-import com.r3.corda.lib.accounts.workflows.services.AccountService;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.LinearIdTurn;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.flows.utilities.StepTimer;
 import com.assetsaving.states.AssetSavingState;
 import net.corda.core.contracts.*;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
-import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import com.assetsaving.contracts.AssetSavingContract.Commands.*;
 
+import java.security.PublicKey;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.assetsaving.flows.utilities.FlowSteps.*;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public class CancelFlow {
@@ -32,39 +34,72 @@ public class CancelFlow {
         private final UniqueIdentifier stateLinearId;
         private final String customer;
 
+        private final ProgressTracker progressTracker = new ProgressTracker(WAITING_FOR_STATE,
+                RESOLVING_ACCOUNT, QUERYING_VAULT, BUILDING_AND_VERIFYING, COLLECTING_SIGNATURES, FINALISING);
+
         public InitiatorFlow(UniqueIdentifier stateLinearId, String customer) {
             this.stateLinearId = stateLinearId;
             this.customer = customer;
         }
 
-        @Suspendable
-        private AnonymousParty getPartyForAccount(String accountName) throws FlowException {
-            AccountService accountService = UtilitiesKt.getAccountService(this);
-            List<StateAndRef<AccountInfo>> accountList = accountService.accountInfo(accountName);
-            if(accountList.size()==0){
-                throw new FlowException("Account "+ accountName +" doesn't exist");
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        private AccountInfo getAccount(String accountName) throws FlowException {
+            StateAndRef<AccountInfo> account = getServiceHub().cordaService(AccountCacheService.class).accountByName(accountName);
+            if (account == null) {
+                throw new FlowException("Account " + accountName + " doesn't exist");
             }
-            return subFlow(new RequestKeyForAccount(accountList.get(0).getState().getData()));
+            return account.getState().getData();
         }
 
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            StepTimer timer = new StepTimer(getClass(), progressTracker);
+
+            // Queue behind any other flow on this saving, so we build on its result instead of
+            // losing to it at the notary after all the signing.
+            LinearIdTurn.take(this, stateLinearId, timer);
+            boolean consumed = false;
+            try {
+                SignedTransaction notarisedTransaction = cancel(timer);
+                consumed = true;
+                return notarisedTransaction;
+            } finally {
+                LinearIdTurn.leave(this, stateLinearId, consumed);
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction cancel(StepTimer timer) throws FlowException {
+            // Check the customer account exists. The state keeps its existing keys, so no new key is generated.
+            timer.next(getServiceHub(), RESOLVING_ACCOUNT);
+            getAccount(customer);
+
+            // Build and sign in a helper, so the query result and the builder are gone by the first suspension.
+            final SignedTransaction stx = buildAndSign(timer);
 
-            // Get the customer account.
-            AnonymousParty customerAccount = getPartyForAccount(customer);
+            SignedTransaction notarisedTransaction = CollectHostSignaturesFlow.collectAndFinalise(this, stx, timer);
+            timer.done(getServiceHub());
+            return notarisedTransaction;
+
+        }
 
-            // Retrieve the asset saving State from the vault using LinearStateQueryCriteria
-            List<UUID> listOfLinearIds = Arrays.asList(stateLinearId.getId());
-            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
-            Vault.Page results = getServiceHub().getVaultService().queryBy(AssetSavingState.class, queryCriteria);
+        private SignedTransaction buildAndSign(StepTimer timer) throws FlowException {
+            // Retrieve the asset saving State from the vault by its linearId
+            timer.next(getServiceHub(), QUERYING_VAULT);
+            StateAndRef<AssetSavingState> inputStateAndRefToCancel =
+                    AssetSavingLookup.unconsumedByLinearId(getServiceHub(), stateLinearId);
 
             // Get a reference to the inputState data that we are going to cancel.
-            StateAndRef inputStateAndRefToCancel = (StateAndRef) results.getStates().get(0);
-            AssetSavingState inputStateToCancel = (AssetSavingState) ((StateAndRef) results.getStates().get(0)).getState().getData();
+            AssetSavingState inputStateToCancel = inputStateAndRefToCancel.getState().getData();
 
-            // Get a reference to the default notary and instantiate a transaction builder.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            // Use the notary of the state we cancel and instantiate a transaction builder.
+            timer.next(getServiceHub(), BUILDING_AND_VERIFYING);
+            final Party notary = NotarySelector.forInput(inputStateAndRefToCancel);
             final TransactionBuilder builder = new TransactionBuilder(notary);
 
             // Construct a cancel command to be added to the transaction.
@@ -79,18 +114,10 @@ public class CancelFlow {
             builder.addCommand(command);
             builder.addInputState(inputStateAndRefToCancel);
 
-            // Verify and sign the transaction
+            // Verify and sign the transaction, with the customer's key too when we host the account
             builder.verify(getServiceHub());
-            final SignedTransaction stx = getServiceHub().signInitialTransaction(builder, getOurIdentity().getOwningKey());
-
-            // Collect all of the required signatures from other Corda nodes using the CollectSignaturesFlow
-            AccountService accountService = UtilitiesKt.getAccountService(this);
-            // Get the session with the node the customer belongs to.
-            FlowSession session = initiateFlow(accountService.accountInfo(customer).get(0).getState().getData().getHost());
-            SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(stx, Arrays.asList(session), Collections.singleton(getOurIdentity().getOwningKey())));
-
-            return subFlow(new FinalityFlow(fullySignedTransaction, Collections.emptyList()));
-
+            List<PublicKey> ourKeys = CollectHostSignaturesFlow.ourKeys(getServiceHub(), command.getSigners());
+            return getServiceHub().signInitialTransaction(builder, ourKeys);
         }
 
     }
@@ -136,9 +163,7 @@ public class CancelFlow {
             subFlow(signTxFlow);
 
             // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
-            if (!otherPartyFlow.getCounterparty().equals(getOurIdentity())) {
-                subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
-            }
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
 
             return null;
         }
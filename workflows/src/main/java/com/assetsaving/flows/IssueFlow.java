@@ -1,10 +1,14 @@
 package com.assetsaving.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.AccountCacheService;
 import com.assetsaving.flows.utilities.InstanceGenerateFlow;
+import com.assetsaving.flows.utilities.KeyForAccountFlow;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.flows.utilities.StepTimer;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
 import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
-import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
 import com.assetsaving.contracts.AssetSavingContract;
 import com.assetsaving.states.AssetSavingState;
 import net.corda.core.contracts.Command;
@@ -20,11 +24,13 @@ import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import com.assetsaving.contracts.AssetSavingContract.Commands.Issue;
 
+import java.security.PublicKey;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.assetsaving.flows.utilities.FlowSteps.*;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public class IssueFlow {
@@ -36,6 +42,9 @@ public class IssueFlow {
         private final Date startDate;
         private final long accumulation;
 
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                RESOLVING_ACCOUNT, REQUESTING_KEY, BUILDING_AND_VERIFYING, COLLECTING_SIGNATURES, FINALISING);
+
         public InitiatorFlow(String customer, String startDate, long accumulation) throws ParseException {
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
             this.customer = customer;
@@ -43,20 +52,45 @@ public class IssueFlow {
             this.startDate = dateFormat.parse(startDate);
         }
 
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            // Generate accountInfo & AnonymousParty object for transaction.
-            final StateAndRef<AccountInfo> accountStateRef = (StateAndRef<AccountInfo>) subFlow(new CreateAccount(customer));
-            final AnonymousParty customerAccount = subFlow(new RequestKeyForAccount(
+            StepTimer timer = new StepTimer(getClass(), progressTracker);
+
+            // Get or create accountInfo & generate AnonymousParty object for transaction.
+            timer.next(getServiceHub(), RESOLVING_ACCOUNT);
+            StateAndRef<AccountInfo> accountStateRef = getServiceHub().cordaService(AccountCacheService.class)
+                    .accountByName(customer, getOurIdentity());
+            if (accountStateRef == null) {
+                accountStateRef = (StateAndRef<AccountInfo>) subFlow(new CreateAccount(customer));
+            }
+            timer.next(getServiceHub(), REQUESTING_KEY);
+            final AnonymousParty customerAccount = subFlow(new KeyForAccountFlow(
                     accountStateRef.getState().getData()));
 
             // Create AssetSavingState.
+            timer.next(getServiceHub(), BUILDING_AND_VERIFYING);
             final AssetSavingState state = subFlow(new InstanceGenerateFlow("USD", getOurIdentity(),
                     customerAccount, startDate, accumulation));
 
-            // Get a reference to the notary service on our network and our key pair.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            // Only the signed transaction is kept; the builder stays in buildAndSign, so it is not
+            // written into the checkpoints of the signing and finality round trips.
+            SignedTransaction partiallySignedTransaction = buildAndSign(state);
+
+            SignedTransaction notarisedTransaction = CollectHostSignaturesFlow.collectAndFinalise(this,
+                    partiallySignedTransaction, timer);
+            timer.done(getServiceHub());
+            return notarisedTransaction;
+        }
+
+        private SignedTransaction buildAndSign(AssetSavingState state) throws FlowException {
+            // Choose a notary for the new saving, so issues spread over the notaries.
+            final Party notary = NotarySelector.forIssue(getServiceHub(), customer);
 
             // Construct a issue command to be added to the transaction.
             final Command<Issue> issueCommand = new Command<>(
@@ -71,17 +105,10 @@ public class IssueFlow {
             builder.addOutputState(state, AssetSavingContract.ID);
             builder.addCommand(issueCommand);
 
-            // Verify and sign it with our KeyPair.
+            // Verify and sign it with our KeyPair, and with the customer's key when we host the account.
             builder.verify(getServiceHub());
-            SignedTransaction partiallySignedTransaction = getServiceHub().signInitialTransaction(builder, getOurIdentity().getOwningKey());
-
-            // Collect the host's signature using the SignTransactionFlow.
-            FlowSession session = initiateFlow(accountStateRef.getState().getData().getHost());
-            final SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(partiallySignedTransaction,
-                    Arrays.asList(session), Collections.singleton(getOurIdentity().getOwningKey())));
-
-            // Finalise the transaction
-            return subFlow(new FinalityFlow(fullySignedTransaction, Collections.emptyList()));
+            List<PublicKey> ourKeys = CollectHostSignaturesFlow.ourKeys(getServiceHub(), issueCommand.getSigners());
+            return getServiceHub().signInitialTransaction(builder, ourKeys);
         }
     }
 
@@ -126,9 +153,7 @@ public class IssueFlow {
             subFlow(signTxFlow);
 
             // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
-            if (!otherPartyFlow.getCounterparty().equals(getOurIdentity())) {
-                subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
-            }
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
 
             return null;
         }
@@ -0,0 +1,141 @@
+package com.assetsaving.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.services.AccountKeyPool;
+import com.assetsaving.flows.utilities.GenerateAccountKeysFlow;
+import com.assetsaving.flows.utilities.OnboardingReport;
+import com.assetsaving.flows.utilities.ReceiveAccountsFlow;
+import com.assetsaving.flows.utilities.ShareAccountsFlow;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.Party;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.*;
+
+/**
+ * Onboards many customer accounts in one flow, e.g. when migrating existing customers.
+ *
+ * The names are handled in chunks. For each chunk, the missing accounts are created, each gets
+ * a few keys for AccountKeyPool, and the whole chunk is shared with every counterpart bank over
+ * one session per bank instead of one ShareAccountFlow per account. Running it again with the same
+ * names creates nothing twice and shares the accounts again.
+ *
+ * The names are part of every checkpoint, so very large migrations are best split over several
+ * flows of some ten thousand names each.
+ */
+public class OnboardAccountsFlow {
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+    public static final int MAX_CHUNK_SIZE = ShareAccountsFlow.MAX_ACCOUNTS;
+    public static final int DEFAULT_KEYS_PER_ACCOUNT = 1;
+
+    private static final ProgressTracker.Step CREATING_ACCOUNTS = new ProgressTracker.Step("Creating the accounts of the chunk.");
+    private static final ProgressTracker.Step GENERATING_KEYS = new ProgressTracker.Step("Generating keys for the accounts of the chunk.");
+    private static final ProgressTracker.Step SHARING_ACCOUNTS = new ProgressTracker.Step("Sharing the chunk with the counterpart banks.");
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class InitiatorFlow extends FlowLogic<OnboardingReport> {
+
+        private final List<String> names;
+        private final List<Party> counterparts;
+        private final int chunkSize;
+        private final int keysPerAccount;
+
+        private final ProgressTracker progressTracker = new ProgressTracker(CREATING_ACCOUNTS, GENERATING_KEYS, SHARING_ACCOUNTS);
+
+        public InitiatorFlow(List<String> names, List<Party> counterparts) {
+            this(names, counterparts, DEFAULT_CHUNK_SIZE, DEFAULT_KEYS_PER_ACCOUNT);
+        }
+
+        public InitiatorFlow(List<String> names, List<Party> counterparts, int chunkSize, int keysPerAccount) {
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("The chunk size should be between 1 and " + MAX_CHUNK_SIZE + ".");
+            }
+            if (keysPerAccount < 0) {
+                throw new IllegalArgumentException("The keys per account should not be negative.");
+            }
+            this.names = names;
+            this.counterparts = counterparts;
+            this.chunkSize = chunkSize;
+            this.keysPerAccount = keysPerAccount;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public OnboardingReport call() throws FlowException {
+            // Duplicated names are onboarded once.
+            List<String> distinct = new ArrayList<>(new LinkedHashSet<>(names));
+            List<Party> recipients = new ArrayList<>(new LinkedHashSet<>(counterparts));
+            recipients.remove(getOurIdentity());
+
+            int created = 0;
+            int existing = 0;
+            int keysGenerated = 0;
+            int shares = 0;
+            for (int from = 0; from < distinct.size(); from += chunkSize) {
+                List<String> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+
+                progressTracker.setCurrentStep(CREATING_ACCOUNTS);
+                List<StateAndRef<AccountInfo>> accounts = new ArrayList<>(chunk.size());
+                for (String name : chunk) {
+                    StateAndRef<AccountInfo> account = getServiceHub().cordaService(AccountCacheService.class)
+                            .accountByName(name, getOurIdentity());
+                    if (account == null) {
+                        account = (StateAndRef<AccountInfo>) subFlow(new CreateAccount(name));
+                        created++;
+                    } else {
+                        existing++;
+                    }
+                    accounts.add(account);
+                }
+
+                progressTracker.setCurrentStep(GENERATING_KEYS);
+                if (keysPerAccount > 0) {
+                    AccountKeyPool keyPool = getServiceHub().cordaService(AccountKeyPool.class);
+                    for (StateAndRef<AccountInfo> account : accounts) {
+                        AccountInfo accountInfo = account.getState().getData();
+                        List<AnonymousParty> keys = subFlow(new GenerateAccountKeysFlow(accountInfo, keysPerAccount));
+                        keyPool.offer(accountInfo, keys);
+                        keysGenerated += keys.size();
+                    }
+                }
+
+                progressTracker.setCurrentStep(SHARING_ACCOUNTS);
+                for (Party recipient : recipients) {
+                    shares += subFlow(new ShareAccountsFlow(initiateFlow(recipient), accounts));
+                }
+
+                getLogger().info("Onboarded {} of {} accounts", from + chunk.size(), distinct.size());
+            }
+            return new OnboardingReport(created, existing, keysGenerated, shares);
+        }
+    }
+
+    @InitiatedBy(OnboardAccountsFlow.InitiatorFlow.class)
+    public static class ResponderFlow extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+
+        public ResponderFlow(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            subFlow(new ReceiveAccountsFlow(otherPartyFlow));
+            return null;
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.assetsaving.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
-import com.r3.corda.lib.accounts.workflows.UtilitiesKt;
-import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
-import com.r3.corda.lib.accounts.workflows.services.AccountService;
 import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.LinearIdTurn;
+import com.assetsaving.flows.utilities.KeyForAccountFlow;
 import com.assetsaving.flows.utilities.KickCreateAccountFlow;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.flows.utilities.StepTimer;
 import com.assetsaving.states.AssetSavingState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.ContractState;
@@ -17,8 +21,6 @@ import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import com.assetsaving.contracts.AssetSavingContract.Commands.Transfer;
@@ -30,6 +32,7 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.assetsaving.flows.utilities.FlowSteps.*;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public class TransferFlow {
@@ -43,6 +46,9 @@ public class TransferFlow {
         private final Date newDate;
         private final Long newAccumulation;
 
+        private final ProgressTracker progressTracker = new ProgressTracker(WAITING_FOR_STATE, RESOLVING_ACCOUNT,
+                CREATING_ACCOUNT, REQUESTING_KEY, QUERYING_VAULT, BUILDING_AND_VERIFYING, COLLECTING_SIGNATURES, FINALISING);
+
         public InitiatorFlow(UniqueIdentifier stateLinearId, Party newBank, String customer, String newCustomer, String newDate, Long newAccumulation) throws ParseException {
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
             this.stateLinearId = stateLinearId;
@@ -54,41 +60,86 @@ public class TransferFlow {
 
         }
 
-        @Suspendable
-        private AnonymousParty getPartyForAccount(String accountName) throws FlowException {
-            AccountService accountService = UtilitiesKt.getAccountService(this);
-            List<StateAndRef<AccountInfo>> accountList = accountService.accountInfo(accountName);
-            if (accountList.size() == 0) {
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        private AccountInfo getAccount(String accountName) throws FlowException {
+            StateAndRef<AccountInfo> account = getServiceHub().cordaService(AccountCacheService.class).accountByName(accountName);
+            if (account == null) {
                 throw new FlowException("Account " + accountName + " doesn't exist");
             }
-            return subFlow(new RequestKeyForAccount(accountList.get(0).getState().getData()));
+            return account.getState().getData();
         }
 
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            StepTimer timer = new StepTimer(getClass(), progressTracker);
+
+            // Queue behind any other flow on this saving, so we build on its result instead of
+            // losing to it at the notary after all the signing.
+            LinearIdTurn.take(this, stateLinearId, timer);
+            boolean consumed = false;
+            try {
+                SignedTransaction notarisedTransaction = transfer(timer);
+                consumed = true;
+                return notarisedTransaction;
+            } finally {
+                LinearIdTurn.leave(this, stateLinearId, consumed);
+            }
+        }
 
-            // Kick the counter party to create and share the account.
-            subFlow(new KickCreateAccountFlow.InitiatorFlow(newBank, newCustomer));
-
-            // Get own account.
-            AnonymousParty customerAccount = getPartyForAccount(customer);
-
-            // Get destination party's account.
-            AnonymousParty newCustomerAccount = getPartyForAccount(newCustomer);
+        @Suspendable
+        private SignedTransaction transfer(StepTimer timer) throws FlowException {
+            // Check own account exists. The old customer signs with the key already on the state.
+            timer.next(getServiceHub(), RESOLVING_ACCOUNT);
+            getAccount(customer);
+
+            // Get destination party's account and a key for it. Only the key is kept afterwards.
+            AnonymousParty newCustomerAccount = subFlow(new KeyForAccountFlow(getNewCustomerAccount(timer)));
+
+            // The vault query and the builder live only inside buildAndSign and never reach a checkpoint.
+            SignedTransaction partiallySignedTransaction = buildAndSign(timer, newCustomerAccount);
+
+            // Collect the other signatures with one session per node holding any of the keys, usually
+            // just the new bank, which also hosts the new customer.
+            SignedTransaction notarisedTransaction = CollectHostSignaturesFlow.collectAndFinalise(this,
+                    partiallySignedTransaction, timer);
+            timer.done(getServiceHub());
+            return notarisedTransaction;
+        }
 
-            // Retrieve the AssetSavingState from the vault using LinearStateQueryCriteria
-            List<UUID> listOfLinearIds = new ArrayList<>();
-            listOfLinearIds.add(stateLinearId.getId());
-            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
+        // The account replicated to us by the account directory. Only on a miss, the counter party
+        // is kicked to create and share it.
+        @Suspendable
+        private AccountInfo getNewCustomerAccount(StepTimer timer) throws FlowException {
+            StateAndRef<AccountInfo> newCustomerAccountRef = getServiceHub().cordaService(AccountCacheService.class)
+                    .accountByName(newCustomer, newBank);
+            if (newCustomerAccountRef == null) {
+                timer.next(getServiceHub(), CREATING_ACCOUNT);
+                subFlow(new KickCreateAccountFlow.InitiatorFlow(newBank, newCustomer));
+                newCustomerAccountRef = getServiceHub().cordaService(AccountCacheService.class)
+                        .accountByName(newCustomer, newBank);
+            }
+            if (newCustomerAccountRef == null) {
+                throw new FlowException("Account " + newCustomer + " doesn't exist on " + newBank);
+            }
+            timer.next(getServiceHub(), REQUESTING_KEY);
+            return newCustomerAccountRef.getState().getData();
+        }
 
+        private SignedTransaction buildAndSign(StepTimer timer, AnonymousParty newCustomerAccount) throws FlowException {
             // Get a reference to the inputState data that we are going to transfer.
-            Vault.Page results = getServiceHub().getVaultService().queryBy(AssetSavingState.class, queryCriteria);
-            StateAndRef inputStateAndRefToTransfer = (StateAndRef) results.getStates().get(0);
-            AssetSavingState inputStateToTransfer = (AssetSavingState) inputStateAndRefToTransfer.getState().getData();
+            timer.next(getServiceHub(), QUERYING_VAULT);
+            StateAndRef<AssetSavingState> inputStateAndRefToTransfer =
+                    AssetSavingLookup.unconsumedByLinearId(getServiceHub(), stateLinearId);
+            AssetSavingState inputStateToTransfer = inputStateAndRefToTransfer.getState().getData();
 
-            // Get a reference to the notary service on our network and our key pair.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            // The transaction has to use the notary of the state it consumes.
+            timer.next(getServiceHub(), BUILDING_AND_VERIFYING);
+            final Party notary = NotarySelector.forInput(inputStateAndRefToTransfer);
 
             // Create a new TransactionBuilder object.
             final TransactionBuilder builder = new TransactionBuilder(notary);
@@ -114,29 +165,7 @@ public class TransferFlow {
 
             // Verify and sign the transaction
             builder.verify(getServiceHub());
-            SignedTransaction partiallySignedTransaction = getServiceHub().signInitialTransaction(builder, getOurIdentity().getOwningKey());
-
-            // Share the account with the new bank.
-            AccountService accountService = UtilitiesKt.getAccountService(this);
-//            List<StateAndRef<AccountInfo>> accountInfoList = accountService.accountInfo(customer);
-//            if (accountInfoList.size() == 0) {
-//                throw new FlowException("Account doesn't exist");
-//            }
-
-            // Collect all of the required signatures from other Corda nodes using the CollectSignaturesFlow
-            List<FlowSession> sessions = new ArrayList<>();
-            FlowSession oldCustomerSession = initiateFlow(accountService.accountInfo(customer).get(0).getState().getData().getHost());
-            FlowSession newBankSession = initiateFlow(newBank);
-            FlowSession newCustomerSession = initiateFlow(accountService.accountInfo(newCustomer).get(0).getState().getData().getHost());
-            sessions.add(oldCustomerSession);
-            sessions.add(newBankSession);
-            sessions.add(newCustomerSession);
-            final SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(partiallySignedTransaction,
-                    sessions, Collections.singleton(getOurIdentity().getOwningKey())));
-
-            // Remove the old bank session because old bank node has already recorded the transaction.
-            sessions.remove(oldCustomerSession);
-            return subFlow(new FinalityFlow(fullySignedTransaction, sessions));
+            return getServiceHub().signInitialTransaction(builder, getOurIdentity().getOwningKey());
         }
     }
 
@@ -178,9 +207,8 @@ public class TransferFlow {
             subFlow(signTxFlow);
 
             // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
-            if (!otherPartyFlow.getCounterparty().equals(getOurIdentity())) {
-                subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
-            }
+            // CollectHostSignaturesFlow signs our own keys locally, so this flow never runs against ourselves.
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
 
             return null;
         }
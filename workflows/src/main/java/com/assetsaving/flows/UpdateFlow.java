@@ -2,11 +2,14 @@ package com.assetsaving.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
-import com.r3.corda.lib.accounts.workflows.UtilitiesKt;
-import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
-import com.r3.corda.lib.accounts.workflows.services.AccountService;
 import com.sun.istack.NotNull;
 import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.CollectHostSignaturesFlow;
+import com.assetsaving.flows.utilities.LinearIdTurn;
+import com.assetsaving.flows.utilities.NotarySelector;
+import com.assetsaving.flows.utilities.StepTimer;
 import com.assetsaving.states.AssetSavingState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.ContractState;
@@ -15,18 +18,17 @@ import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
-import net.corda.core.identity.AnonymousParty;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import com.assetsaving.contracts.AssetSavingContract.Commands.Update;
 import net.corda.core.utilities.ProgressTracker;
 
+import java.security.PublicKey;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.assetsaving.flows.utilities.FlowSteps.*;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public class UpdateFlow {
@@ -38,41 +40,72 @@ public class UpdateFlow {
         private final Long newAccumulation;
         private final String customer;
 
+        private final ProgressTracker progressTracker = new ProgressTracker(WAITING_FOR_STATE,
+                RESOLVING_ACCOUNT, QUERYING_VAULT, BUILDING_AND_VERIFYING, COLLECTING_SIGNATURES, FINALISING);
+
         public InitiatorFlow(UniqueIdentifier stateLinearId, Long newAccumulation, String customer) {
             this.stateLinearId = stateLinearId;
             this.newAccumulation = newAccumulation;
             this.customer = customer;
         }
 
-        @Suspendable
-        private AnonymousParty getPartyForAccount(String accountName) throws FlowException {
-            AccountService accountService = UtilitiesKt.getAccountService(this);
-            List<StateAndRef<AccountInfo>> accountList = accountService.accountInfo(accountName);
-            if (accountList.size() == 0) {
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        private AccountInfo getAccount(String accountName) throws FlowException {
+            StateAndRef<AccountInfo> account = getServiceHub().cordaService(AccountCacheService.class).accountByName(accountName);
+            if (account == null) {
                 throw new FlowException("Account " + accountName + " doesn't exist");
             }
-            return subFlow(new RequestKeyForAccount(accountList.get(0).getState().getData()));
+            return account.getState().getData();
         }
 
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            StepTimer timer = new StepTimer(getClass(), progressTracker);
+
+            // Queue behind any other flow on this saving, so we build on its result instead of
+            // losing to it at the notary after all the signing.
+            LinearIdTurn.take(this, stateLinearId, timer);
+            boolean consumed = false;
+            try {
+                SignedTransaction notarisedTransaction = update(timer);
+                consumed = true;
+                return notarisedTransaction;
+            } finally {
+                LinearIdTurn.leave(this, stateLinearId, consumed);
+            }
+        }
 
-            // Retrieve the AssetSavingState from the vault using LinearStateQueryCriteria
-            List<UUID> listOfLinearIds = new ArrayList<>();
-            listOfLinearIds.add(stateLinearId.getId());
-            QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
-
-            // Get the customer account.
-            AnonymousParty customerAccount = getPartyForAccount(customer);
+        @Suspendable
+        private SignedTransaction update(StepTimer timer) throws FlowException {
+            // Check the customer account exists. The state keeps its existing keys, so no new key is generated.
+            timer.next(getServiceHub(), RESOLVING_ACCOUNT);
+            getAccount(customer);
+
+            // Only the signed transaction is kept; the input and the builder stay in buildAndSign,
+            // so they are not written into the checkpoints of the signing and finality round trips.
+            SignedTransaction partiallySignedTransaction = buildAndSign(timer);
+
+            SignedTransaction notarisedTransaction = CollectHostSignaturesFlow.collectAndFinalise(this,
+                    partiallySignedTransaction, timer);
+            timer.done(getServiceHub());
+            return notarisedTransaction;
+        }
 
+        private SignedTransaction buildAndSign(StepTimer timer) throws FlowException {
             // Get a reference to the inputState data that we are going to update.
-            Vault.Page results = getServiceHub().getVaultService().queryBy(AssetSavingState.class, queryCriteria);
-            StateAndRef inputStateAndRefToUpdate = (StateAndRef) results.getStates().get(0);
-            AssetSavingState inputStateToUpdate = (AssetSavingState) inputStateAndRefToUpdate.getState().getData();
+            timer.next(getServiceHub(), QUERYING_VAULT);
+            StateAndRef<AssetSavingState> inputStateAndRefToUpdate =
+                    AssetSavingLookup.unconsumedByLinearId(getServiceHub(), stateLinearId);
+            AssetSavingState inputStateToUpdate = inputStateAndRefToUpdate.getState().getData();
 
-            // Get a reference to the notary service on our network and our key pair.
-            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            // The transaction has to use the notary of the state it consumes.
+            timer.next(getServiceHub(), BUILDING_AND_VERIFYING);
+            final Party notary = NotarySelector.forInput(inputStateAndRefToUpdate);
 
             // Create a new TransactionBuilder object.
             final TransactionBuilder builder = new TransactionBuilder(notary);
@@ -93,18 +126,9 @@ public class UpdateFlow {
             // Verify and sign the transaction
             builder.verify(getServiceHub());
 
-            // Sign the transaction by own public key.
-            SignedTransaction partiallySignedTransaction = getServiceHub()
-                    .signInitialTransaction(builder, getOurIdentity().getOwningKey());
-
-            // Collect all of the required signatures from customer using the CollectSignaturesFlow
-            AccountService accountService = UtilitiesKt.getAccountService(this);
-            FlowSession session = initiateFlow(accountService.accountInfo(customer).get(0).getState().getData().getHost());
-
-            final SignedTransaction fullySignedTransaction = subFlow(new CollectSignaturesFlow(partiallySignedTransaction,
-                    Arrays.asList(session), Collections.singleton(getOurIdentity().getOwningKey())));
-
-            return subFlow(new FinalityFlow(fullySignedTransaction, Collections.emptyList()));
+            // Sign the transaction by own public key, and by the customer's key when we host the account.
+            List<PublicKey> ourKeys = CollectHostSignaturesFlow.ourKeys(getServiceHub(), updateCommand.getSigners());
+            return getServiceHub().signInitialTransaction(builder, ourKeys);
         }
     }
 
@@ -146,9 +170,7 @@ public class UpdateFlow {
             subFlow(signTxFlow);
 
             // Run the ReceiveFinalityFlow to finalize the transaction and persist it to the vault.
-            if (!otherPartyFlow.getCounterparty().equals(getOurIdentity())) {
-                subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
-            }
+            subFlow(new ReceiveFinalityFlow(otherPartyFlow, txWeJustSignedId));
 
             return null;
         }
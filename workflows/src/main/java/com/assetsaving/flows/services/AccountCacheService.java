@@ -0,0 +1,150 @@
+package com.assetsaving.flows.services;
+
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.services.AccountService;
+import com.r3.corda.lib.accounts.workflows.services.KeyManagementBackedAccountService;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.security.PublicKey;
+import java.util.*;
+
+/**
+ * A bounded cache in front of the account service, so the flows do not run a vault query every
+ * time they resolve the same account by name or by key.
+ *
+ * Entries are evicted least recently used first, and any change to an AccountInfo state drops
+ * the entries of that account.
+ */
+@CordaService
+public class AccountCacheService extends SingletonSerializeAsToken {
+
+    static final int MAX_ENTRIES = 10_000;
+
+    private final AppServiceHub serviceHub;
+    private final Map<String, List<StateAndRef<AccountInfo>>> accountsByName = boundedMap();
+    private final Map<PublicKey, StateAndRef<AccountInfo>> accountsByKey = boundedMap();
+
+    public AccountCacheService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED) {
+                // The raw updates rather than trackBy, whose snapshot fails past one page of accounts.
+                serviceHub.getVaultService().getUpdates().subscribe(this::invalidate);
+            }
+        });
+    }
+
+    /**
+     * All the accounts with this name, on any host. Empty results are not cached.
+     */
+    public List<StateAndRef<AccountInfo>> accountsByName(String name) {
+        synchronized (accountsByName) {
+            List<StateAndRef<AccountInfo>> cached = accountsByName.get(name);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<StateAndRef<AccountInfo>> accounts = accountService().accountInfo(name);
+        if (!accounts.isEmpty()) {
+            synchronized (accountsByName) {
+                accountsByName.put(name, Collections.unmodifiableList(new ArrayList<>(accounts)));
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * The first account with this name, or null if there is none.
+     */
+    public StateAndRef<AccountInfo> accountByName(String name) {
+        List<StateAndRef<AccountInfo>> accounts = accountsByName(name);
+        return accounts.isEmpty() ? null : accounts.get(0);
+    }
+
+    /**
+     * The account with this name hosted by the given node, or null if there is none.
+     */
+    public StateAndRef<AccountInfo> accountByName(String name, Party host) {
+        StateAndRef<AccountInfo> account = hostedBy(accountsByName(name), host);
+        if (account == null) {
+            // The account may have been shared with us after the name was cached.
+            synchronized (accountsByName) {
+                accountsByName.remove(name);
+            }
+            account = hostedBy(accountsByName(name), host);
+        }
+        return account;
+    }
+
+    /**
+     * The account owning this key, or null if the key does not belong to a known account.
+     */
+    public StateAndRef<AccountInfo> accountByKey(PublicKey owningKey) {
+        synchronized (accountsByKey) {
+            StateAndRef<AccountInfo> cached = accountsByKey.get(owningKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        StateAndRef<AccountInfo> account = accountService().accountInfo(owningKey);
+        if (account != null) {
+            synchronized (accountsByKey) {
+                accountsByKey.put(owningKey, account);
+            }
+        }
+        return account;
+    }
+
+    private static StateAndRef<AccountInfo> hostedBy(List<StateAndRef<AccountInfo>> accounts, Party host) {
+        for (StateAndRef<AccountInfo> account : accounts) {
+            if (account.getState().getData().getHost().equals(host)) {
+                return account;
+            }
+        }
+        return null;
+    }
+
+    private void invalidate(Vault.Update<ContractState> update) {
+        Set<String> names = new HashSet<>();
+        Set<UUID> identifiers = new HashSet<>();
+        List<StateAndRef<ContractState>> changed = new ArrayList<>(update.getConsumed());
+        changed.addAll(update.getProduced());
+        for (StateAndRef<ContractState> state : changed) {
+            if (state.getState().getData() instanceof AccountInfo) {
+                AccountInfo account = (AccountInfo) state.getState().getData();
+                names.add(account.getName());
+                identifiers.add(account.getIdentifier().getId());
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        synchronized (accountsByName) {
+            accountsByName.keySet().removeAll(names);
+        }
+        synchronized (accountsByKey) {
+            accountsByKey.values().removeIf(account ->
+                    identifiers.contains(account.getState().getData().getIdentifier().getId()));
+        }
+    }
+
+    private AccountService accountService() {
+        return serviceHub.cordaService(KeyManagementBackedAccountService.class);
+    }
+
+    private static <K, V> Map<K, V> boundedMap() {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+}
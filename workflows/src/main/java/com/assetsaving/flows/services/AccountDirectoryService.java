@@ -0,0 +1,176 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.flows.utilities.AccountDirectoryFlow;
+import com.assetsaving.flows.utilities.ShareAccountsFlow;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Replicates the accounts this node hosts to the banks subscribed to its directory, so they can
+ * resolve our customers from their own vault instead of asking us with KickCreateAccountFlow.
+ *
+ * On start, the node subscribes to the banks listed in the accountDirectoryPeers entry of the
+ * CorDapp config (X500 names separated by semicolons) and catches up on their accounts. Only those
+ * peers may subscribe to us, as a subscriber is sent every account we host. A peer that subscribes is
+ * remembered until we restart, when it has to subscribe again, and our configured peers are always
+ * pushed to. New accounts are pushed in batches from a dedicated thread.
+ */
+@CordaService
+public class AccountDirectoryService extends SingletonSerializeAsToken {
+
+    public static final String PEERS_CONFIG_KEY = "accountDirectoryPeers";
+
+    private final static Logger logger = LoggerFactory.getLogger(AccountDirectoryService.class);
+
+    private final AppServiceHub serviceHub;
+    private final Set<Party> subscribers = ConcurrentHashMap.newKeySet();
+    private final Queue<StateAndRef<AccountInfo>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    // Flows are started from here rather than from the vault observer's thread.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "account-directory");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AccountDirectoryService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED) {
+                // Queued first, so nothing that goes wrong below can keep us from our peers.
+                executor.execute(this::subscribeToPeers);
+                // Not trackBy: its unpaged snapshot throws once we host more accounts than a default page.
+                serviceHub.getVaultService().getUpdates().subscribe(this::onUpdate);
+            }
+        });
+    }
+
+    /**
+     * Called when a bank subscribes to our directory. Returns false, adding nothing, if the bank is
+     * not one of our configured peers.
+     */
+    public boolean addSubscriber(Party subscriber) {
+        if (!configuredPeers().contains(subscriber)) {
+            return false;
+        }
+        subscribers.add(subscriber);
+        return true;
+    }
+
+    public Set<Party> subscribers() {
+        return Collections.unmodifiableSet(subscribers);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onUpdate(Vault.Update<ContractState> update) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Party us = ourIdentity();
+        boolean added = false;
+        for (StateAndRef<ContractState> state : update.getProduced()) {
+            if (state.getState().getData() instanceof AccountInfo
+                    && ((AccountInfo) state.getState().getData()).getHost().equals(us)) {
+                pending.add((StateAndRef<AccountInfo>) (StateAndRef<?>) state);
+                added = true;
+            }
+        }
+        if (added && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    // Pushes what is pending to every subscriber, at most ShareAccountsFlow.MAX_ACCOUNTS per flow.
+    private void drain() {
+        try {
+            while (!pending.isEmpty()) {
+                List<StateAndRef<AccountInfo>> batch = new ArrayList<>();
+                StateAndRef<AccountInfo> account;
+                while (batch.size() < ShareAccountsFlow.MAX_ACCOUNTS && (account = pending.poll()) != null) {
+                    batch.add(account);
+                }
+                for (Party subscriber : subscribers) {
+                    push(batch, subscriber);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // An account queued after the last poll but before the flag was cleared.
+        if (!pending.isEmpty() && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void push(List<StateAndRef<AccountInfo>> batch, Party subscriber) {
+        try {
+            serviceHub.startFlow(new AccountDirectoryFlow.Push(batch, subscriber)).getReturnValue().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The subscriber resolves a missed account with a kick and catches up when it resubscribes.
+            logger.warn("Could not push {} accounts to {}", batch.size(), subscriber, e);
+        }
+    }
+
+    private void subscribeToPeers() {
+        // Notaries load the CorDapp too, but host no accounts and resolve none.
+        if (serviceHub.getNetworkMapCache().isNotary(ourIdentity())) {
+            return;
+        }
+        for (Party peer : configuredPeers()) {
+            addSubscriber(peer);
+            try {
+                int accounts = serviceHub.startFlow(new AccountDirectoryFlow.Subscribe(peer)).getReturnValue().get();
+                logger.info("Subscribed to the account directory of {}, {} accounts", peer, accounts);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.warn("Could not subscribe to the account directory of {}", peer, e);
+            }
+        }
+    }
+
+    private List<Party> configuredPeers() {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        if (!config.exists(PEERS_CONFIG_KEY)) {
+            return Collections.emptyList();
+        }
+        List<Party> peers = new ArrayList<>();
+        for (String name : config.getString(PEERS_CONFIG_KEY).split(";")) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            Party peer = serviceHub.getNetworkMapCache().getPeerByLegalName(CordaX500Name.parse(name.trim()));
+            if (peer == null) {
+                logger.warn("Account directory peer {} is not on the network map", name.trim());
+            } else if (!peer.equals(ourIdentity())) {
+                peers.add(peer);
+            }
+        }
+        return peers;
+    }
+
+    private Party ourIdentity() {
+        return serviceHub.getMyInfo().getLegalIdentities().get(0);
+    }
+}
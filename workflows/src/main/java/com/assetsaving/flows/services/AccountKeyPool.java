@@ -0,0 +1,111 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.flows.utilities.GenerateAccountKeysFlow;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a reservoir of fresh confidential keys per account, so an issuing flow can take a key
+ * that is already registered instead of generating one on its critical path.
+ *
+ * Each key is handed out once. A reservoir is created on the first request for an account and
+ * is refilled in the background by GenerateAccountKeysFlow whenever it runs low. Keys left in a
+ * reservoir when the node stops are simply never used.
+ */
+@CordaService
+public class AccountKeyPool extends SingletonSerializeAsToken {
+
+    // Number of keys a reservoir is topped up to.
+    static final int TARGET_KEYS = 20;
+    // A refill starts once a reservoir holds fewer keys than this.
+    static final int LOW_WATERMARK = 5;
+    // Upper bound on the accounts with a reservoir; the least recently used one is dropped first.
+    static final int MAX_ACCOUNTS = 1000;
+
+    private final static Logger logger = LoggerFactory.getLogger(AccountKeyPool.class);
+
+    private final AppServiceHub serviceHub;
+    // Flows are started from here rather than from the calling flow's thread.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "account-key-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<UUID, Reservoir> reservoirs = new LinkedHashMap<UUID, Reservoir>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Reservoir> eldest) {
+            return size() > MAX_ACCOUNTS;
+        }
+    };
+
+    public AccountKeyPool(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /**
+     * Takes a pre-generated key of the account, or returns null if its reservoir is empty.
+     * Either way a refill is started when the reservoir runs low.
+     */
+    public AnonymousParty take(AccountInfo account) {
+        Reservoir reservoir;
+        synchronized (reservoirs) {
+            reservoir = reservoirs.computeIfAbsent(account.getIdentifier().getId(), id -> new Reservoir());
+        }
+        AnonymousParty key = reservoir.keys.poll();
+        if (reservoir.keys.size() < LOW_WATERMARK && reservoir.refilling.compareAndSet(false, true)) {
+            executor.execute(() -> refill(account, reservoir));
+        }
+        return key;
+    }
+
+    /**
+     * Adds keys generated elsewhere, e.g. while onboarding the account, to its reservoir.
+     */
+    public void offer(AccountInfo account, List<AnonymousParty> keys) {
+        Reservoir reservoir;
+        synchronized (reservoirs) {
+            reservoir = reservoirs.computeIfAbsent(account.getIdentifier().getId(), id -> new Reservoir());
+        }
+        reservoir.keys.addAll(keys);
+    }
+
+    private void refill(AccountInfo account, Reservoir reservoir) {
+        int missing = TARGET_KEYS - reservoir.keys.size();
+        try {
+            serviceHub.startFlow(new GenerateAccountKeysFlow(account, missing)).getReturnValue().then(result -> {
+                try {
+                    List<AnonymousParty> keys = result.get();
+                    reservoir.keys.addAll(keys);
+                    logger.debug("Added {} keys to the reservoir of account {}", keys.size(), account.getName());
+                } catch (Exception e) {
+                    logger.warn("Could not generate keys for account " + account.getName(), e);
+                } finally {
+                    reservoir.refilling.set(false);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Could not start key generation for account " + account.getName(), e);
+            reservoir.refilling.set(false);
+        }
+    }
+
+    private static class Reservoir {
+        private final ConcurrentLinkedQueue<AnonymousParty> keys = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean refilling = new AtomicBoolean(false);
+    }
+}
@@ -0,0 +1,116 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.flows.AccumulateFlow;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the accumulations that fall due in the same scheduler tick and starts one
+ * AccumulateFlow for all of them, instead of one transaction per state.
+ *
+ * Each submission learns whether its own state was accumulated only once the batch flow is done,
+ * so its ScheduledFlow can submit it again.
+ */
+@CordaService
+public class AccumulationBatcher extends SingletonSerializeAsToken {
+
+    // How long to wait for more due states before starting the batch.
+    static final long BATCH_WINDOW_MILLIS = 2000;
+    // Upper bound on the states handed to one AccumulateFlow.
+    static final int MAX_STATES_PER_FLOW = 1000;
+
+    private final static Logger logger = LoggerFactory.getLogger(AccumulationBatcher.class);
+
+    private final AppServiceHub serviceHub;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "accumulation-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    public AccumulationBatcher(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /**
+     * Adds the state to the current batch. The future completes with whether the state was
+     * accumulated, once the transaction accumulating it is final or the batch has failed.
+     */
+    public CompletableFuture<Boolean> submit(StateRef stateRef) {
+        CompletableFuture<Boolean> accumulated = new CompletableFuture<>();
+        synchronized (lock) {
+            pending.add(new Pending(stateRef, accumulated));
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::flush, BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return accumulated;
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+
+        for (List<Pending> chunk : AssetSavingLookup.chunk(batch, MAX_STATES_PER_FLOW)) {
+            List<StateRef> stateRefs = new ArrayList<>(chunk.size());
+            for (Pending entry : chunk) {
+                stateRefs.add(entry.stateRef);
+            }
+            try {
+                serviceHub.startFlow(new AccumulateFlow.InitiatorFlow(stateRefs)).getReturnValue().then(result -> {
+                    Map<StateRef, SecureHash> accumulated;
+                    try {
+                        accumulated = result.get();
+                    } catch (Exception e) {
+                        logger.error("Accumulation of " + stateRefs.size() + " AssetSavings failed", e);
+                        accumulated = Collections.emptyMap();
+                    }
+                    for (Pending entry : chunk) {
+                        entry.accumulated.complete(accumulated.containsKey(entry.stateRef));
+                    }
+                    return null;
+                });
+                logger.info("Started accumulation of {} AssetSavings", stateRefs.size());
+            } catch (RuntimeException e) {
+                logger.error("Could not start accumulation of " + stateRefs.size() + " AssetSavings", e);
+                for (Pending entry : chunk) {
+                    entry.accumulated.complete(false);
+                }
+            }
+        }
+    }
+
+    private static class Pending {
+        private final StateRef stateRef;
+        private final CompletableFuture<Boolean> accumulated;
+
+        private Pending(StateRef stateRef, CompletableFuture<Boolean> accumulated) {
+            this.stateRef = stateRef;
+            this.accumulated = accumulated;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.flows.utilities.FlowStepMetric;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timers of the ProgressTracker steps of the initiator flows, kept per flow and step.
+ *
+ * Every timer is registered with the platform MBean server, so the node's JMX shows which step
+ * dominates a slow flow. The webserver reads the same numbers through FlowMetricsFlow.
+ */
+@CordaService
+public class FlowMetricsService extends SingletonSerializeAsToken {
+
+    private final static Logger logger = LoggerFactory.getLogger(FlowMetricsService.class);
+
+    private final Map<String, FlowStepStats> stats = new ConcurrentHashMap<>();
+    // Part of every ObjectName, as the nodes of a MockNetwork or driver share one MBean server.
+    private final String node;
+
+    public FlowMetricsService(AppServiceHub serviceHub) {
+        this.node = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString();
+    }
+
+    /**
+     * Records that the step of the flow took this long.
+     */
+    public void record(String flow, String step, long nanos) {
+        stats.computeIfAbsent(flow + "/" + step, key -> register(flow, step)).record(nanos);
+    }
+
+    public List<FlowStepMetric> snapshot() {
+        List<FlowStepMetric> snapshot = new ArrayList<>(stats.size());
+        for (FlowStepStats step : stats.values()) {
+            snapshot.add(step.toMetric());
+        }
+        return snapshot;
+    }
+
+    private FlowStepStats register(String flow, String step) {
+        FlowStepStats stepStats = new FlowStepStats(flow, step);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(stepStats, new ObjectName("com.assetsaving:type=FlowStep,node=" + ObjectName.quote(node)
+                    + ",flow=" + ObjectName.quote(flow) + ",step=" + ObjectName.quote(step)));
+        } catch (Exception e) {
+            logger.warn("Could not register the JMX timer of " + flow + " " + step, e);
+        }
+        return stepStats;
+    }
+
+    /**
+     * Count, mean and max of a step, plus a histogram of power-of-two microsecond buckets for
+     * the percentiles, so recording never allocates.
+     */
+    static final class FlowStepStats implements FlowStepMXBean {
+        private static final int BUCKETS = 40;
+
+        private final String flow;
+        private final String step;
+        private final long[] buckets = new long[BUCKETS];
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        private FlowStepStats(String flow, String step) {
+            this.flow = flow;
+            this.step = step;
+        }
+
+        private synchronized void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            buckets[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros))]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public synchronized long getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized double getMeanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentileMillis(0.5);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentileMillis(0.99);
+        }
+
+        @Override
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        // Upper bound of the bucket holding the percentile, capped by the max.
+        private synchronized double percentileMillis(double percentile) {
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min((1L << (i + 1)) / 1000.0, maxNanos / 1e6);
+                }
+            }
+            return 0;
+        }
+
+        private FlowStepMetric toMetric() {
+            return new FlowStepMetric(flow, step, getCount(), getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.assetsaving.flows.services;
+
+/**
+ * JMX view of the timings of one step of one flow, registered by FlowMetricsService as
+ * com.assetsaving:type=FlowStep,node=&lt;node&gt;,flow=&lt;flow&gt;,step=&lt;step&gt;.
+ */
+public interface FlowStepMXBean {
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,23 @@
+package com.assetsaving.flows.services;
+
+/**
+ * JMX view of the contention between lifecycle flows on the same AssetSaving, registered by
+ * LinearIdCoordinator as com.assetsaving:type=LinearIdCoordinator,node=&lt;node&gt;.
+ */
+public interface LinearIdContentionMXBean {
+
+    // Turns taken without waiting.
+    long getAcquired();
+
+    // Flows that had to wait behind another flow.
+    long getQueued();
+
+    // Flows refused because too many were waiting already.
+    long getRejected();
+
+    // The AssetSavings currently held by a flow.
+    int getHeldStates();
+
+    // The most contended AssetSavings, as linearId=contended turns, most contended first.
+    String[] getHotStates();
+}
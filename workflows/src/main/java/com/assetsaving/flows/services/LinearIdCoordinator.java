@@ -0,0 +1,250 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Lets one lifecycle flow at a time work on an AssetSaving, and queues the others per linearId.
+ *
+ * Two flows consuming the same state both do all the signing work before one of them loses at the
+ * notary. With a turn per linearId the second flow waits until the first has finished, and then
+ * builds on the new head instead. When too many flows wait already, a flow is refused at once, so
+ * its caller learns that the state is busy before any cross-node work. Flows working on many states
+ * at once, the bulk flows and accumulation, take only the turns that are free and never queue.
+ *
+ * A flow that finished passes the turn on only once the vault shows its input consumed, so the
+ * next flow never reads a head the previous one has replaced but not yet committed. The vault
+ * updates come through the LinearIdIndexService after it has indexed them, so the next flow does
+ * not find the replaced head in the index either.
+ *
+ * Turns are kept in memory only. After a restart the flows resumed from their checkpoints simply
+ * take new turns.
+ */
+@CordaService
+public class LinearIdCoordinator extends SingletonSerializeAsToken implements LinearIdContentionMXBean {
+
+    public enum Turn { ACQUIRED, QUEUED, BUSY }
+
+    // Upper bound on the flows waiting for one linearId.
+    static final int MAX_WAITING = 16;
+    // A holder that has not left by then is taken to be gone, e.g. killed, and the next flow gets its turn.
+    static final long LEASE_MILLIS = 120_000;
+    static final int MAX_TRACKED_STATES = 10_000;
+    static final int HOT_STATES = 10;
+
+    private final static Logger logger = LoggerFactory.getLogger(LinearIdCoordinator.class);
+
+    private final Map<UUID, Slot> slots = new HashMap<>();
+    // Contended turns per linearId, least recently contended evicted first.
+    private final Map<UUID, long[]> contention = new LinkedHashMap<UUID, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, long[]> eldest) {
+            return size() > MAX_TRACKED_STATES;
+        }
+    };
+    private long acquired = 0;
+    private long queued = 0;
+    private long rejected = 0;
+
+    public LinearIdCoordinator(AppServiceHub serviceHub) {
+        try {
+            // Named after the node, since MockNetwork and driver nodes share one JVM and its MBean server.
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("com.assetsaving:type=LinearIdCoordinator,node="
+                            + ObjectName.quote(serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString())));
+        } catch (Exception e) {
+            logger.warn("Could not register the JMX view of the LinearIdCoordinator", e);
+        }
+    }
+
+    /**
+     * Asks for the turn on the linearId. A QUEUED flow polls hasTurn until it gets it; a BUSY one
+     * should give up.
+     */
+    public synchronized Turn enter(UniqueIdentifier linearId, StateMachineRunId flowId) {
+        UUID id = linearId.getId();
+        Slot slot = slots.get(id);
+        if (slot == null) {
+            slots.put(id, new Slot(flowId));
+            acquired++;
+            return Turn.ACQUIRED;
+        }
+        if (flowId.equals(slot.holder)) {
+            return Turn.ACQUIRED;
+        }
+        if (slot.waiting.contains(flowId)) {
+            return Turn.QUEUED;
+        }
+        contention.computeIfAbsent(id, key -> new long[1])[0]++;
+        if (slot.waiting.size() >= MAX_WAITING) {
+            rejected++;
+            return Turn.BUSY;
+        }
+        slot.waiting.add(flowId);
+        queued++;
+        return Turn.QUEUED;
+    }
+
+    /**
+     * Takes the turn on the linearId only if no other flow holds it, without queueing. For the
+     * flows working on many states, which skip or retry the busy ones rather than wait in line.
+     */
+    public synchronized boolean tryEnter(UniqueIdentifier linearId, StateMachineRunId flowId) {
+        UUID id = linearId.getId();
+        Slot slot = current(id);
+        if (slot == null) {
+            slots.put(id, new Slot(flowId));
+            acquired++;
+            return true;
+        }
+        if (flowId.equals(slot.holder)) {
+            return true;
+        }
+        contention.computeIfAbsent(id, key -> new long[1])[0]++;
+        return false;
+    }
+
+    /**
+     * Whether the flow holds the turn on the linearId now. A flow the coordinator does not know,
+     * e.g. after a restart, is queued again.
+     */
+    public synchronized boolean hasTurn(UniqueIdentifier linearId, StateMachineRunId flowId) {
+        UUID id = linearId.getId();
+        Slot slot = current(id);
+        if (slot == null) {
+            slots.put(id, new Slot(flowId));
+            return true;
+        }
+        if (flowId.equals(slot.holder)) {
+            return true;
+        }
+        if (!slot.waiting.contains(flowId)) {
+            slot.waiting.add(flowId);
+        }
+        return false;
+    }
+
+    /**
+     * Gives up the turn, or the place in the queue, of the flow on the linearId. A flow that
+     * consumed the state keeps the turn until the vault has the consumption.
+     */
+    public synchronized void leave(UniqueIdentifier linearId, StateMachineRunId flowId, boolean consumedState) {
+        UUID id = linearId.getId();
+        Slot slot = slots.get(id);
+        if (slot == null) {
+            return;
+        }
+        if (!flowId.equals(slot.holder)) {
+            slot.waiting.remove(flowId);
+        } else if (!consumedState || slot.consumed) {
+            next(id, slot);
+        } else {
+            slot.finished = true;
+        }
+    }
+
+    /**
+     * The number of flows waiting for the linearId.
+     */
+    public synchronized int waiting(UniqueIdentifier linearId) {
+        Slot slot = slots.get(linearId.getId());
+        return slot == null ? 0 : slot.waiting.size();
+    }
+
+    // The slot of the linearId, after passing on a turn held for longer than the lease.
+    private Slot current(UUID id) {
+        Slot slot = slots.get(id);
+        if (slot != null && System.currentTimeMillis() - slot.since > LEASE_MILLIS) {
+            logger.warn("Flow {} held AssetSaving {} for over {} ms, passing the turn on", slot.holder, id, LEASE_MILLIS);
+            next(id, slot);
+            slot = slots.get(id);
+        }
+        return slot;
+    }
+
+    // The consumption may be committed before or after the holder leaves; the later one passes the turn on.
+    synchronized void consumed(Vault.Update<ContractState> update) {
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (consumed.getState().getData() instanceof AssetSavingState) {
+                UUID id = ((AssetSavingState) consumed.getState().getData()).getLinearId().getId();
+                Slot slot = slots.get(id);
+                if (slot == null) {
+                    continue;
+                }
+                if (slot.finished) {
+                    next(id, slot);
+                } else {
+                    slot.consumed = true;
+                }
+            }
+        }
+    }
+
+    // Hands the turn to the longest waiting flow, or frees the linearId.
+    private void next(UUID id, Slot slot) {
+        slot.holder = slot.waiting.poll();
+        slot.since = System.currentTimeMillis();
+        slot.finished = false;
+        slot.consumed = false;
+        if (slot.holder == null) {
+            slots.remove(id);
+        }
+    }
+
+    @Override
+    public synchronized long getAcquired() {
+        return acquired;
+    }
+
+    @Override
+    public synchronized long getQueued() {
+        return queued;
+    }
+
+    @Override
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized int getHeldStates() {
+        return slots.size();
+    }
+
+    @Override
+    public synchronized String[] getHotStates() {
+        List<Map.Entry<UUID, long[]>> entries = new ArrayList<>(contention.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        String[] hot = new String[Math.min(HOT_STATES, entries.size())];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = entries.get(i).getKey() + "=" + entries.get(i).getValue()[0];
+        }
+        return hot;
+    }
+
+    private static final class Slot {
+        private StateMachineRunId holder;
+        private long since = System.currentTimeMillis();
+        // Whether the holder has left after consuming the state, and whether the vault shows it consumed.
+        private boolean finished = false;
+        private boolean consumed = false;
+        private final Deque<StateMachineRunId> waiting = new ArrayDeque<>();
+
+        private Slot(StateMachineRunId holder) {
+            this.holder = holder;
+        }
+    }
+}
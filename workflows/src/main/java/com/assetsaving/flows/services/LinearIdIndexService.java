@@ -0,0 +1,93 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.flows.utilities.LinearIdIndex;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The unconsumed head of every AssetSaving linearId, so the lifecycle flows find their input
+ * without a vault query.
+ *
+ * The index is rebuilt from the vault before the state machine starts and then kept current from
+ * the vault updates, which it then passes on to the LinearIdCoordinator. A linearId missing from
+ * the index is not proof that it has no head; callers fall back to the vault, see AssetSavingLookup.
+ */
+@CordaService
+public class LinearIdIndexService extends SingletonSerializeAsToken {
+
+    static final int LOAD_PAGE_SIZE = 5000;
+
+    private final static Logger logger = LoggerFactory.getLogger(LinearIdIndexService.class);
+
+    private final AppServiceHub serviceHub;
+    private final LinearIdIndex index = new LinearIdIndex();
+
+    public LinearIdIndexService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.BEFORE_STATE_MACHINE_START) {
+                load();
+                LinearIdCoordinator coordinator = serviceHub.cordaService(LinearIdCoordinator.class);
+                // One subscriber for both, in this order: a flow given the turn must find the new head here.
+                serviceHub.getVaultService().getUpdates().subscribe(update -> {
+                    apply(update);
+                    coordinator.consumed(update);
+                });
+            }
+        });
+    }
+
+    /**
+     * The StateRef of the unconsumed head of the linearId, or null if it is not indexed.
+     */
+    public synchronized StateRef head(UniqueIdentifier linearId) {
+        return index.get(linearId.getId());
+    }
+
+    private void load() {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        int loaded = 0;
+        for (int page = 1; ; page++) {
+            Vault.Page<AssetSavingState> results = serviceHub.getVaultService().queryBy(AssetSavingState.class,
+                    criteria, new PageSpecification(page, LOAD_PAGE_SIZE));
+            synchronized (this) {
+                for (StateAndRef<AssetSavingState> state : results.getStates()) {
+                    index.put(state.getState().getData().getLinearId().getId(), state.getRef());
+                }
+            }
+            loaded += results.getStates().size();
+            if (results.getStates().size() < LOAD_PAGE_SIZE || loaded >= results.getTotalStatesAvailable()) {
+                break;
+            }
+        }
+        logger.info("Indexed the heads of {} AssetSavings", loaded);
+    }
+
+    // The consumed heads go first, so an update replacing the head of a linearId leaves the new one.
+    private synchronized void apply(Vault.Update<ContractState> update) {
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (consumed.getState().getData() instanceof AssetSavingState) {
+                AssetSavingState state = (AssetSavingState) consumed.getState().getData();
+                index.remove(state.getLinearId().getId(), consumed.getRef());
+            }
+        }
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            if (produced.getState().getData() instanceof AssetSavingState) {
+                AssetSavingState state = (AssetSavingState) produced.getState().getData();
+                index.put(state.getLinearId().getId(), produced.getRef());
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.assetsaving.flows.services;
+
+import com.assetsaving.flows.utilities.PortfolioTotal;
+import com.assetsaving.flows.utilities.UuidTotals;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Running totals of the unconsumed AssetSavingStates per customer account and per bank, so a
+ * balance summary is a lookup instead of a vault query.
+ *
+ * The totals are loaded from the vault before the state machine starts, when no flow can change
+ * it yet, and from then on kept current from the vault updates. Accounts are keyed by the two
+ * longs of their identifier in a UuidTotals table per currency.
+ */
+@CordaService
+public class PortfolioService extends SingletonSerializeAsToken {
+
+    static final int LOAD_PAGE_SIZE = 5000;
+
+    private final static Logger logger = LoggerFactory.getLogger(PortfolioService.class);
+
+    private final AppServiceHub serviceHub;
+    // Per currency, the count and balance per account identifier.
+    private final Map<String, UuidTotals> accounts = new HashMap<>();
+    // Per bank name and currency, the count and balance. There are only a handful of banks.
+    private final Map<String, Map<String, long[]>> banks = new TreeMap<>();
+
+    public PortfolioService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event == ServiceLifecycleEvent.BEFORE_STATE_MACHINE_START) {
+                load();
+                serviceHub.getVaultService().getUpdates().subscribe(this::apply);
+            }
+        });
+    }
+
+    /**
+     * The totals of the account, one per currency it holds savings in.
+     */
+    public synchronized List<PortfolioTotal> accountTotals(UUID account, String name) {
+        List<PortfolioTotal> totals = new ArrayList<>();
+        for (Map.Entry<String, UuidTotals> currency : accounts.entrySet()) {
+            int count = currency.getValue().count(account);
+            if (count > 0) {
+                totals.add(new PortfolioTotal(name, currency.getKey(), count, currency.getValue().sum(account)));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * The totals of every bank, one per currency.
+     */
+    public synchronized List<PortfolioTotal> bankTotals() {
+        List<PortfolioTotal> totals = new ArrayList<>();
+        for (Map.Entry<String, Map<String, long[]>> bank : banks.entrySet()) {
+            for (Map.Entry<String, long[]> currency : bank.getValue().entrySet()) {
+                if (currency.getValue()[0] > 0) {
+                    totals.add(new PortfolioTotal(bank.getKey(), currency.getKey(),
+                            currency.getValue()[0], currency.getValue()[1]));
+                }
+            }
+        }
+        return totals;
+    }
+
+    private void load() {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        int loaded = 0;
+        for (int page = 1; ; page++) {
+            Vault.Page<AssetSavingState> results = serviceHub.getVaultService().queryBy(AssetSavingState.class,
+                    criteria, new PageSpecification(page, LOAD_PAGE_SIZE));
+            List<AssetSavingState> states = new ArrayList<>(results.getStates().size());
+            for (StateAndRef<AssetSavingState> state : results.getStates()) {
+                states.add(state.getState().getData());
+            }
+            add(Collections.emptyList(), states);
+            loaded += states.size();
+            if (states.size() < LOAD_PAGE_SIZE || loaded >= results.getTotalStatesAvailable()) {
+                break;
+            }
+        }
+        logger.info("Loaded the portfolio totals of {} AssetSavings", loaded);
+    }
+
+    private void apply(Vault.Update<ContractState> update) {
+        add(assetSavings(update.getConsumed()), assetSavings(update.getProduced()));
+    }
+
+    // Takes the consumed states out of the totals of their bank and account and adds the produced
+    // ones, in one step so a reader never sees an update half applied.
+    private void add(List<AssetSavingState> consumed, List<AssetSavingState> produced) {
+        List<AssetSavingState> states = new ArrayList<>(consumed);
+        states.addAll(produced);
+        if (states.isEmpty()) {
+            return;
+        }
+        // The accounts are resolved before taking the lock, so readers never wait on the database.
+        List<UUID> accountIds = new ArrayList<>(states.size());
+        for (AssetSavingState state : states) {
+            accountIds.add(serviceHub.getIdentityService().externalIdForPublicKey(state.getCustomer().getOwningKey()));
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < states.size(); i++) {
+                AssetSavingState state = states.get(i);
+                int sign = i < consumed.size() ? -1 : 1;
+                String currency = state.getBalance().getToken().getCurrencyCode();
+                long balance = sign * state.getBalance().getQuantity();
+
+                long[] bank = banks.computeIfAbsent(state.getBank().getName().toString(), name -> new TreeMap<>())
+                        .computeIfAbsent(currency, code -> new long[2]);
+                bank[0] += sign;
+                bank[1] += balance;
+
+                // Keys of accounts this node knows nothing about are only counted for the bank.
+                if (accountIds.get(i) != null) {
+                    accounts.computeIfAbsent(currency, code -> new UuidTotals()).add(accountIds.get(i), sign, balance);
+                }
+            }
+        }
+    }
+
+    private static List<AssetSavingState> assetSavings(Set<StateAndRef<ContractState>> states) {
+        List<AssetSavingState> assetSavings = new ArrayList<>();
+        for (StateAndRef<ContractState> state : states) {
+            if (state.getState().getData() instanceof AssetSavingState) {
+                assetSavings.add((AssetSavingState) state.getState().getData());
+            }
+        }
+        return assetSavings;
+    }
+}
@@ -0,0 +1,138 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.AccountDirectoryService;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * The flows replicating the accounts each bank hosts to the other banks, kept up to date by
+ * AccountDirectoryService.
+ */
+public class AccountDirectoryFlow {
+
+    /**
+     * Subscribes to the directory of a bank. The bank first sends every account it hosts, in chunks
+     * ending with an empty one, and from then on pushes each new account. Returns the number of
+     * accounts received.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    @StartableByService
+    public static class Subscribe extends FlowLogic<Integer> {
+
+        private final Party publisher;
+
+        public Subscribe(Party publisher) {
+            this.publisher = publisher;
+        }
+
+        @Suspendable
+        @Override
+        public Integer call() throws FlowException {
+            FlowSession session = initiateFlow(publisher);
+            int total = 0;
+            int received;
+            do {
+                received = subFlow(new ReceiveAccountsFlow(session));
+                total += received;
+            } while (received > 0);
+            return total;
+        }
+    }
+
+    @InitiatedBy(Subscribe.class)
+    public static class SubscribeResponder extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+
+        public SubscribeResponder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            // Subscribe first, so an account created while the snapshot is sent is pushed afterwards.
+            // Only our configured peers get the directory.
+            Party subscriber = otherPartyFlow.getCounterparty();
+            if (!getServiceHub().cordaService(AccountDirectoryService.class).addSubscriber(subscriber)) {
+                throw new FlowException(subscriber + " is not an account directory peer of ours");
+            }
+
+            QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+            Sort sort = new Sort(Collections.singletonList(new Sort.SortColumn(
+                    new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC)));
+            for (int page = DEFAULT_PAGE_NUM; ; page++) {
+                List<StateAndRef<AccountInfo>> accounts = getServiceHub().getVaultService().queryBy(AccountInfo.class,
+                        criteria, new PageSpecification(page, ShareAccountsFlow.MAX_ACCOUNTS), sort).getStates();
+                List<StateAndRef<AccountInfo>> hosted = new ArrayList<>(accounts.size());
+                for (StateAndRef<AccountInfo> account : accounts) {
+                    if (account.getState().getData().getHost().equals(getOurIdentity())) {
+                        hosted.add(account);
+                    }
+                }
+                if (!hosted.isEmpty()) {
+                    subFlow(new ShareAccountsFlow(otherPartyFlow, hosted));
+                }
+                if (accounts.size() < ShareAccountsFlow.MAX_ACCOUNTS) {
+                    break;
+                }
+            }
+            subFlow(new ShareAccountsFlow(otherPartyFlow, Collections.emptyList()));
+            return null;
+        }
+    }
+
+    /**
+     * Pushes new accounts we host to one subscriber. Started by AccountDirectoryService.
+     */
+    @InitiatingFlow
+    @StartableByService
+    public static class Push extends FlowLogic<Integer> {
+
+        private final List<StateAndRef<AccountInfo>> accounts;
+        private final Party subscriber;
+
+        public Push(List<StateAndRef<AccountInfo>> accounts, Party subscriber) {
+            this.accounts = accounts;
+            this.subscriber = subscriber;
+        }
+
+        @Suspendable
+        @Override
+        public Integer call() throws FlowException {
+            return subFlow(new ShareAccountsFlow(initiateFlow(subscriber), accounts));
+        }
+    }
+
+    @InitiatedBy(Push.class)
+    public static class PushResponder extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+
+        public PushResponder(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            subFlow(new ReceiveAccountsFlow(otherPartyFlow));
+            return null;
+        }
+    }
+}
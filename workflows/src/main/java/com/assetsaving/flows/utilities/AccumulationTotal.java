@@ -0,0 +1,51 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * Count, sum, min and max of the accumulation of the unconsumed AssetSavingStates of one group and
+ * currency, as returned by AggregateAccumulationFlow.
+ */
+@CordaSerializable
+public class AccumulationTotal {
+    private final String group;
+    private final String currency;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    public AccumulationTotal(String group, String currency, long count, long sum, long min, long max) {
+        this.group = group;
+        this.currency = currency;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    // The bank name, the currency or the account name, depending on the grouping.
+    public String getGroup() {
+        return group;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
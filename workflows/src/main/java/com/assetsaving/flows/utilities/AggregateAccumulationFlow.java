@@ -0,0 +1,156 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Totals of the accumulation of the unconsumed AssetSavingStates, grouped by bank, currency or
+ * customer account, and always by currency so amounts of different currencies are never added up.
+ *
+ * The grouping runs as one SQL statement in the node database, over the covering indexes of
+ * AssetSavingSchemaV1, so only the aggregated rows are read and returned. Customer keys are mapped
+ * to their account through the node's key to external id table; keys the node cannot map are
+ * totalled in a group with a null name.
+ */
+@StartableByRPC
+public class AggregateAccumulationFlow extends FlowLogic<List<AccumulationTotal>> {
+
+    public static final String BANK = "bank";
+    public static final String CURRENCY = "currency";
+    public static final String ACCOUNT = "account";
+
+    public static final int MAX_PAGE_SIZE = 10_000;
+
+    private static final String TOTALS = "SELECT %s, s.currency_code, COUNT(*), SUM(s.accumulation),"
+            + " MIN(s.accumulation), MAX(s.accumulation)"
+            + " FROM asset_saving_states s"
+            + " JOIN vault_states v ON v.transaction_id = s.transaction_id AND v.output_index = s.output_index"
+            + "%s"
+            + " WHERE v.state_status = 0"
+            + " GROUP BY %1$s, s.currency_code"
+            + " ORDER BY %1$s, s.currency_code"
+            + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+    private static final String ACCOUNT_JOIN = " LEFT JOIN pk_hash_to_ext_id_map k ON k.public_key_hash = s.customer_key_hash";
+
+    private final String groupBy;
+    private final int offset;
+    private final int pageSize;
+
+    /**
+     * @param groupBy bank, currency or account.
+     * @param offset the number of groups to skip, for paging through the totals by account.
+     */
+    public AggregateAccumulationFlow(String groupBy, int offset, int pageSize) {
+        checkArguments(groupBy, offset, pageSize);
+        this.groupBy = groupBy;
+        this.offset = offset;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Throws an IllegalArgumentException for arguments the flow would reject, so callers can check them first.
+     */
+    public static void checkArguments(String groupBy, int offset, int pageSize) {
+        if (!BANK.equals(groupBy) && !CURRENCY.equals(groupBy) && !ACCOUNT.equals(groupBy)) {
+            throw new IllegalArgumentException("Unknown grouping " + groupBy + ". Please use "
+                    + BANK + ", " + CURRENCY + " or " + ACCOUNT + ".");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset should not be negative.");
+        }
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("The page size should be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+    }
+
+    @Suspendable
+    @Override
+    public List<AccumulationTotal> call() throws FlowException {
+        String sql;
+        switch (groupBy) {
+            case BANK:
+                sql = String.format(TOTALS, "s.bank_name", "");
+                break;
+            case CURRENCY:
+                sql = String.format(TOTALS, "s.currency_code", "");
+                break;
+            default:
+                sql = String.format(TOTALS, "k.external_id", ACCOUNT_JOIN);
+        }
+
+        List<AccumulationTotal> totals = new ArrayList<>();
+        // The account of each row, or null, to be named once the page is read.
+        List<UUID> accounts = new ArrayList<>();
+        try (PreparedStatement statement = getServiceHub().jdbcSession().prepareStatement(sql)) {
+            statement.setInt(1, offset);
+            statement.setInt(2, pageSize);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    UUID account = ACCOUNT.equals(groupBy) && rows.getObject(1) != null ? toUuid(rows.getObject(1)) : null;
+                    String group = ACCOUNT.equals(groupBy) ? (account == null ? null : account.toString()) : rows.getString(1);
+                    accounts.add(account);
+                    totals.add(new AccumulationTotal(group, rows.getString(2), rows.getLong(3), rows.getLong(4),
+                            rows.getLong(5), rows.getLong(6)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new FlowException("Could not total the accumulations by " + groupBy, e);
+        }
+        return ACCOUNT.equals(groupBy) ? named(totals, accounts) : totals;
+    }
+
+    // Renames the rows of accounts the node knows; the others keep their external id.
+    private List<AccumulationTotal> named(List<AccumulationTotal> totals, List<UUID> accounts) {
+        Map<UUID, String> names = accountNames(new LinkedHashSet<>(accounts));
+        List<AccumulationTotal> named = new ArrayList<>(totals.size());
+        for (int i = 0; i < totals.size(); i++) {
+            AccumulationTotal total = totals.get(i);
+            String name = names.get(accounts.get(i));
+            named.add(name == null ? total : new AccumulationTotal(name, total.getCurrency(), total.getCount(),
+                    total.getSum(), total.getMin(), total.getMax()));
+        }
+        return named;
+    }
+
+    // The AccountInfo linearId is the account's identifier, so one query names the whole page.
+    private Map<UUID, String> accountNames(Set<UUID> accounts) {
+        accounts.remove(null);
+        Map<UUID, String> names = new HashMap<>();
+        if (accounts.isEmpty()) {
+            return names;
+        }
+        QueryCriteria criteria = new QueryCriteria.LinearStateQueryCriteria(null, new ArrayList<>(accounts));
+        List<StateAndRef<AccountInfo>> infos = getServiceHub().getVaultService().queryBy(AccountInfo.class, criteria,
+                new PageSpecification(DEFAULT_PAGE_NUM, accounts.size())).getStates();
+        for (StateAndRef<AccountInfo> info : infos) {
+            names.put(info.getState().getData().getIdentifier().getId(), info.getState().getData().getName());
+        }
+        return names;
+    }
+
+    // The column is a native UUID on H2 and PostgreSQL, and binary or text elsewhere.
+    private static UUID toUuid(Object value) {
+        if (value instanceof UUID) {
+            return (UUID) value;
+        }
+        if (value instanceof byte[] && ((byte[]) value).length == 16) {
+            ByteBuffer bytes = ByteBuffer.wrap((byte[]) value);
+            return new UUID(bytes.getLong(), bytes.getLong());
+        }
+        return UUID.fromString(value.toString());
+    }
+}
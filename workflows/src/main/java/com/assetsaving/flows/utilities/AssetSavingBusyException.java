@@ -0,0 +1,21 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+
+import java.util.Collection;
+
+/**
+ * Thrown by a lifecycle flow that could not get its turn on an AssetSaving, before it has done any
+ * work with other nodes. The caller may retry once the other flows are done.
+ */
+public class AssetSavingBusyException extends FlowException {
+
+    public AssetSavingBusyException(UniqueIdentifier linearId, int waiting) {
+        super("AssetSaving " + linearId + " is busy, " + waiting + " flows are waiting for it");
+    }
+
+    public AssetSavingBusyException(Collection<UniqueIdentifier> linearIds) {
+        super(linearIds.size() + " AssetSavings are busy, among them " + linearIds.iterator().next());
+    }
+}
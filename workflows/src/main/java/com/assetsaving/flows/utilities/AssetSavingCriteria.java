@@ -0,0 +1,68 @@
+package com.assetsaving.flows.utilities;
+
+import com.assetsaving.schemas.AssetSavingSchemaV1.PersistentAssetSaving;
+import net.corda.core.crypto.CryptoUtils;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+
+import java.security.PublicKey;
+import java.time.Instant;
+
+/**
+ * VaultCustomQueryCriteria over the indexed columns of AssetSavingSchemaV1.
+ *
+ * Combine them with and()/or() and pass the result to queryBy so the filtering runs in the database.
+ */
+public class AssetSavingCriteria {
+
+    private AssetSavingCriteria() {
+    }
+
+    /**
+     * Matches every AssetSaving row. It joins the schema table, so its columns can be used to sort the results.
+     */
+    public static QueryCriteria all() {
+        return custom(Builder.notNull(field("linearId")));
+    }
+
+    public static QueryCriteria bank(Party bank) {
+        return custom(Builder.equal(field("bankName"), bank.getName().toString()));
+    }
+
+    public static QueryCriteria customer(PublicKey customerKey) {
+        return custom(Builder.equal(field("customerKeyHash"), CryptoUtils.toStringShort(customerKey)));
+    }
+
+    public static QueryCriteria startDateBetween(Instant from, Instant to) {
+        return custom(Builder.between(field("startDate"), from, to));
+    }
+
+    public static QueryCriteria currency(String currencyCode) {
+        return custom(Builder.equal(field("currencyCode"), currencyCode));
+    }
+
+    public static QueryCriteria accumulationAtLeast(long minorUnits) {
+        return custom(Builder.greaterThanOrEqual(field("accumulation"), minorUnits));
+    }
+
+    public static QueryCriteria accumulationAtMost(long minorUnits) {
+        return custom(Builder.lessThanOrEqual(field("accumulation"), minorUnits));
+    }
+
+    static FieldInfo field(String name) {
+        try {
+            return QueryCriteriaUtils.getField(name, PersistentAssetSaving.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("AssetSavingSchemaV1 has no column " + name, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static QueryCriteria custom(CriteriaExpression expression) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression);
+    }
+}
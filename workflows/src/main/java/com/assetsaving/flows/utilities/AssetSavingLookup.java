@@ -0,0 +1,141 @@
+package com.assetsaving.flows.utilities;
+
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.services.LinearIdIndexService;
+import com.assetsaving.states.AssetSavingState;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import java.util.*;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Helpers for the flows: one vault query for one or many linearIds, and grouping of the found
+ * states by the node hosting their customer account.
+ *
+ * The single-state lookup reads the LinearIdIndexService before the vault. The queries return
+ * only the states and not the Vault.Page, so a flow holding the result across a suspension does
+ * not write the page and its metadata into every checkpoint.
+ */
+public class AssetSavingLookup {
+
+    // Upper bound on the states of one bulk transaction, so a single transaction stays a reasonable size.
+    public static final int MAX_STATES_PER_TRANSACTION = 100;
+
+    private AssetSavingLookup() {
+    }
+
+    /**
+     * Fetches the unconsumed head of the linearId from the LinearIdIndexService, and from the vault
+     * only when the index does not have it.
+     */
+    @SuppressWarnings("unchecked")
+    public static StateAndRef<AssetSavingState> unconsumedByLinearId(ServiceHub serviceHub,
+                                                                     UniqueIdentifier linearId) throws FlowException {
+        StateRef head = serviceHub.cordaService(LinearIdIndexService.class).head(linearId);
+        if (head != null) {
+            try {
+                StateAndRef<ContractState> stateAndRef = serviceHub.toStateAndRef(head);
+                if (stateAndRef.getState().getData() instanceof AssetSavingState) {
+                    return (StateAndRef<AssetSavingState>) (StateAndRef<?>) stateAndRef;
+                }
+            } catch (TransactionResolutionException e) {
+                // The transaction is not in our storage; the vault has the last word.
+            }
+        }
+        return unconsumedByLinearIds(serviceHub, Collections.singletonList(linearId)).get(0);
+    }
+
+    /**
+     * Fetches the unconsumed heads of all the linearIds with a single LinearStateQueryCriteria.
+     */
+    public static List<StateAndRef<AssetSavingState>> unconsumedByLinearIds(ServiceHub serviceHub,
+                                                                           Collection<UniqueIdentifier> linearIds) throws FlowException {
+        List<UUID> listOfLinearIds = new ArrayList<>(linearIds.size());
+        for (UniqueIdentifier linearId : linearIds) {
+            listOfLinearIds.add(linearId.getId());
+        }
+        QueryCriteria queryCriteria = new QueryCriteria.LinearStateQueryCriteria(null, listOfLinearIds);
+        Vault.Page<AssetSavingState> results = serviceHub.getVaultService().queryBy(AssetSavingState.class, queryCriteria,
+                new PageSpecification(DEFAULT_PAGE_NUM, Math.max(listOfLinearIds.size(), 1)));
+
+        if (results.getStates().size() != listOfLinearIds.size()) {
+            Set<UUID> missing = new LinkedHashSet<>(listOfLinearIds);
+            for (StateAndRef<AssetSavingState> stateAndRef : results.getStates()) {
+                missing.remove(stateAndRef.getState().getData().getLinearId().getId());
+            }
+            throw new FlowException("AssetSaving " + missing + " doesn't exist");
+        }
+        return results.getStates();
+    }
+
+    /**
+     * Groups the states by the host of their customer account, keeping the input order inside each group.
+     */
+    public static Map<Party, List<StateAndRef<AssetSavingState>>> groupByCustomerHost(AccountCacheService accountCache,
+                                                                                     List<StateAndRef<AssetSavingState>> states) throws FlowException {
+        Map<Party, List<StateAndRef<AssetSavingState>>> groups = new LinkedHashMap<>();
+        for (StateAndRef<AssetSavingState> stateAndRef : states) {
+            AssetSavingState state = stateAndRef.getState().getData();
+            StateAndRef<AccountInfo> account = accountCache.accountByKey(state.getCustomer().getOwningKey());
+            if (account == null) {
+                throw new FlowException("The customer account of AssetSaving " + state.getLinearId() + " doesn't exist");
+            }
+            groups.computeIfAbsent(account.getState().getData().getHost(), host -> new ArrayList<>()).add(stateAndRef);
+        }
+        return groups;
+    }
+
+    /**
+     * Plans the transactions of a bulk flow: the states grouped by the host of their customer
+     * account, then by notary, in chunks of at most MAX_STATES_PER_TRANSACTION. Only the linearIds
+     * come back, so the plan can be held across suspensions and each chunk read again just before
+     * it is built.
+     */
+    public static List<List<UniqueIdentifier>> planChunks(AccountCacheService accountCache,
+                                                          List<StateAndRef<AssetSavingState>> states) throws FlowException {
+        List<List<UniqueIdentifier>> chunks = new ArrayList<>();
+        for (List<StateAndRef<AssetSavingState>> hostGroup : groupByCustomerHost(accountCache, states).values()) {
+            // A transaction can only consume states of one notary.
+            for (List<StateAndRef<AssetSavingState>> notaryGroup : NotarySelector.groupByNotary(hostGroup).values()) {
+                for (List<StateAndRef<AssetSavingState>> chunk : chunk(notaryGroup, MAX_STATES_PER_TRANSACTION)) {
+                    chunks.add(linearIds(chunk));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * The linearIds of the states, in order.
+     */
+    public static List<UniqueIdentifier> linearIds(List<StateAndRef<AssetSavingState>> states) {
+        List<UniqueIdentifier> linearIds = new ArrayList<>(states.size());
+        for (StateAndRef<AssetSavingState> stateAndRef : states) {
+            linearIds.add(stateAndRef.getState().getData().getLinearId());
+        }
+        return linearIds;
+    }
+
+    /**
+     * Splits the list into consecutive chunks of at most chunkSize elements.
+     */
+    public static <T> List<List<T>> chunk(List<T> list, int chunkSize) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += chunkSize) {
+            chunks.add(new ArrayList<>(list.subList(from, Math.min(from + chunkSize, list.size()))));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,55 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.List;
+
+/**
+ * One page of AssetSavingStateModels together with the total number of matching states.
+ */
+@CordaSerializable
+public class AssetSavingPage {
+
+    private int pageNumber;
+    private int pageSize;
+    private long totalStates;
+    private List<AssetSavingStateModel> states;
+
+    public AssetSavingPage(int pageNumber, int pageSize, long totalStates, List<AssetSavingStateModel> states) {
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+        this.totalStates = totalStates;
+        this.states = states;
+    }
+
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getTotalStates() {
+        return totalStates;
+    }
+
+    public List<AssetSavingStateModel> getStates() {
+        return states;
+    }
+
+    public boolean hasNextPage() {
+        return (long) pageNumber * pageSize < totalStates;
+    }
+
+    @Override
+    public String toString() {
+        return "\n" +
+                "AssetSavingPage{" + "\n" +
+                "pageNumber= " + pageNumber + "\n" +
+                ", pageSize= " + pageSize + "\n" +
+                ", totalStates= " + totalStates + "\n" +
+                ", states= " + states + "\n" +
+                '}';
+    }
+}
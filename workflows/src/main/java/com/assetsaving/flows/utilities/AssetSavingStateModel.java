@@ -2,17 +2,28 @@ package com.assetsaving.flows.utilities;
 
 import net.corda.core.serialization.CordaSerializable;
 
-import java.util.Date;
+import java.util.UUID;
 
 @CordaSerializable
 public class AssetSavingStateModel {
 
     private String bank;
     private String customer;
+    private UUID linearId;
+    // Epoch milliseconds.
+    private long startDate;
+    // Minor units of the currency.
+    private long accumulation;
+    private String currency;
 
-    public AssetSavingStateModel(String bank, String customer) {
+    public AssetSavingStateModel(String bank, String customer, UUID linearId, long startDate,
+                                 long accumulation, String currency) {
         this.bank = bank;
         this.customer = customer;
+        this.linearId = linearId;
+        this.startDate = startDate;
+        this.accumulation = accumulation;
+        this.currency = currency;
     }
 
     public String getBank() {
@@ -23,12 +34,32 @@ public class AssetSavingStateModel {
         return customer;
     }
 
+    public UUID getLinearId() {
+        return linearId;
+    }
+
+    public long getStartDate() {
+        return startDate;
+    }
+
+    public long getAccumulation() {
+        return accumulation;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
     @Override
     public String toString() {
         return "\n" +
                 "AssetSavingStateModel{" + "\n" +
                 "bank= " + bank + "\n" +
                 ", customer= " + customer + "\n" +
+                ", linearId= " + linearId + "\n" +
+                ", startDate= " + startDate + "\n" +
+                ", accumulation= " + accumulation + "\n" +
+                ", currency= " + currency + "\n" +
                 '}';
     }
 }
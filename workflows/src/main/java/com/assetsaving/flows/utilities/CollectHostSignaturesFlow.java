@@ -0,0 +1,191 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.UntrustworthyData;
+
+import java.security.PublicKey;
+import java.util.*;
+
+/**
+ * Collects the missing signatures of a transaction with one session per host node, asking every
+ * host at once instead of one after the other as CollectSignaturesFlow does.
+ *
+ * The missing keys are grouped by the well-known party they belong to, so a node holding several
+ * of them, e.g. a bank and its own customer account, signs them all in one exchange. Keys of our
+ * own node are signed locally without a session. The other side is an ordinary SignTransactionFlow:
+ * each host is sent the transaction to resolve and verify, then the signing keys go out to all the
+ * hosts in one sendAllMap and the signatures come back through one receiveAll, so the hosts check
+ * and sign concurrently.
+ */
+public class CollectHostSignaturesFlow extends FlowLogic<SignedTransaction> {
+
+    private final SignedTransaction partiallySignedTransaction;
+    private final Collection<FlowSession> sessions;
+
+    /**
+     * @param sessions exactly one session per remote node holding a missing key.
+     */
+    public CollectHostSignaturesFlow(SignedTransaction partiallySignedTransaction, Collection<FlowSession> sessions) {
+        this.partiallySignedTransaction = partiallySignedTransaction;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Collects the signatures the transaction is still missing and finalises it. One session is opened
+     * per remote node holding a missing key, and the same sessions receive the finalised transaction.
+     *
+     * The initiators sign with every key this node holds before calling this: the bank's and those of
+     * the customer accounts it hosts. For a customer hosted here nothing is missing, so no session is
+     * opened at all and only the notary is involved. As no flow opens a session with its own node, the
+     * responders need no special case for it.
+     *
+     * @param timer moved through the signing and finality steps, or null for a flow without one.
+     */
+    @Suspendable
+    public static SignedTransaction collectAndFinalise(FlowLogic<?> flow, SignedTransaction partiallySignedTransaction,
+                                                       StepTimer timer) throws FlowException {
+        if (timer != null) {
+            timer.next(flow.getServiceHub(), FlowSteps.COLLECTING_SIGNATURES);
+        }
+        List<FlowSession> sessions = new ArrayList<>();
+        for (Party host : hostsToCollectFrom(flow, partiallySignedTransaction)) {
+            sessions.add(flow.initiateFlow(host));
+        }
+        SignedTransaction fullySignedTransaction = flow.subFlow(
+                new CollectHostSignaturesFlow(partiallySignedTransaction, sessions));
+
+        if (timer != null) {
+            timer.next(flow.getServiceHub(), FlowSteps.FINALISING);
+        }
+        return flow.subFlow(new FinalityFlow(fullySignedTransaction, sessions));
+    }
+
+    /**
+     * Collects and finalises the transaction of a flow that reports no progress steps.
+     */
+    @Suspendable
+    public static SignedTransaction collectAndFinalise(FlowLogic<?> flow, SignedTransaction partiallySignedTransaction)
+            throws FlowException {
+        return collectAndFinalise(flow, partiallySignedTransaction, null);
+    }
+
+    /**
+     * The remote nodes holding keys that have not signed the transaction yet, to open sessions with.
+     */
+    public static Set<Party> hostsToCollectFrom(FlowLogic<?> flow, SignedTransaction stx) throws FlowException {
+        return keysByHost(flow, missingKeys(stx)).keySet();
+    }
+
+    /**
+     * The keys among these that this node holds: its own and those of the accounts it hosts.
+     */
+    public static List<PublicKey> ourKeys(ServiceHub serviceHub, Collection<PublicKey> keys) {
+        List<PublicKey> ours = new ArrayList<>();
+        serviceHub.getKeyManagementService().filterMyKeys(keys).forEach(ours::add);
+        return ours;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        SignedTransaction stx = partiallySignedTransaction;
+        Set<PublicKey> missing = missingKeys(stx);
+
+        // Our own keys, e.g. of an account we host, are signed here.
+        for (PublicKey key : ourKeys(getServiceHub(), missing)) {
+            stx = getServiceHub().addSignature(stx, key);
+            missing.remove(key);
+        }
+
+        Map<Party, List<PublicKey>> keysByHost = keysByHost(this, missing);
+        Map<FlowSession, List<PublicKey>> requests = new LinkedHashMap<>();
+        for (FlowSession session : sessions) {
+            List<PublicKey> keys = keysByHost.remove(session.getCounterparty());
+            if (keys == null) {
+                throw new FlowException("No signature is required from " + session.getCounterparty());
+            }
+            if (requests.put(session, keys) != null) {
+                throw new FlowException("More than one session with " + session.getCounterparty());
+            }
+        }
+        if (!keysByHost.isEmpty()) {
+            throw new FlowException("No session was given for " + keysByHost.keySet());
+        }
+        if (requests.isEmpty()) {
+            return stx;
+        }
+
+        // Each host resolves the dependencies it is missing over its own session.
+        for (FlowSession session : requests.keySet()) {
+            subFlow(new SendTransactionFlow(session, stx));
+        }
+
+        // Then every host is asked for its signatures at once.
+        sendAllMap(requests);
+        List<FlowSession> hosts = new ArrayList<>(requests.keySet());
+        List<UntrustworthyData<List>> replies = receiveAll(List.class, hosts);
+
+        List<TransactionSignature> signatures = new ArrayList<>();
+        for (int i = 0; i < hosts.size(); i++) {
+            Set<PublicKey> expected = new HashSet<>(requests.get(hosts.get(i)));
+            SignedTransaction toSign = stx;
+            signatures.addAll(replies.get(i).unwrap(reply -> checkSignatures(reply, expected, toSign)));
+        }
+        stx = stx.withAdditionalSignatures(signatures);
+        stx.verifyRequiredSignatures();
+        return stx;
+    }
+
+    private static List<TransactionSignature> checkSignatures(List<?> reply, Set<PublicKey> expected, SignedTransaction stx) {
+        List<TransactionSignature> signatures = new ArrayList<>(reply.size());
+        for (Object item : reply) {
+            if (!(item instanceof TransactionSignature)) {
+                throw new IllegalArgumentException("Expected a TransactionSignature, got " + item);
+            }
+            TransactionSignature signature = (TransactionSignature) item;
+            if (!expected.contains(signature.getBy())) {
+                throw new IllegalArgumentException("Unexpected signature by " + signature.getBy());
+            }
+            if (!signature.isValid(stx.getId())) {
+                throw new IllegalArgumentException("Invalid signature by " + signature.getBy());
+            }
+            signatures.add(signature);
+        }
+        return signatures;
+    }
+
+    private static Set<PublicKey> missingKeys(SignedTransaction stx) {
+        Set<PublicKey> missing = new LinkedHashSet<>(stx.getTx().getRequiredSigningKeys());
+        for (TransactionSignature signature : stx.getSigs()) {
+            missing.remove(signature.getBy());
+        }
+        // The notary signs at finality.
+        if (stx.getNotary() != null) {
+            missing.remove(stx.getNotary().getOwningKey());
+        }
+        return missing;
+    }
+
+    // Keys of our own node are left out.
+    private static Map<Party, List<PublicKey>> keysByHost(FlowLogic<?> flow, Set<PublicKey> keys) throws FlowException {
+        Set<PublicKey> ours = new HashSet<>(ourKeys(flow.getServiceHub(), keys));
+        Map<Party, List<PublicKey>> keysByHost = new LinkedHashMap<>();
+        for (PublicKey key : keys) {
+            if (ours.contains(key)) {
+                continue;
+            }
+            Party host = flow.getServiceHub().getIdentityService().wellKnownPartyFromAnonymous(new AnonymousParty(key));
+            if (host == null) {
+                throw new FlowException("Could not resolve the node holding key " + key);
+            }
+            keysByHost.computeIfAbsent(host, party -> new ArrayList<>()).add(key);
+        }
+        return keysByHost;
+    }
+}
@@ -0,0 +1,22 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.FlowMetricsService;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * Returns the per-step timings the node has recorded since it started.
+ */
+@StartableByRPC
+public class FlowMetricsFlow extends FlowLogic<List<FlowStepMetric>> {
+
+    @Suspendable
+    @Override
+    public List<FlowStepMetric> call() throws FlowException {
+        return getServiceHub().cordaService(FlowMetricsService.class).snapshot();
+    }
+}
@@ -0,0 +1,56 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * Snapshot of the timings of one step of one flow, as returned by FlowMetricsFlow.
+ */
+@CordaSerializable
+public class FlowStepMetric {
+    private final String flow;
+    private final String step;
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    public FlowStepMetric(String flow, String step, long count, double meanMillis, double p50Millis,
+                          double p99Millis, double maxMillis) {
+        this.flow = flow;
+        this.step = step;
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public String getFlow() {
+        return flow;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+}
@@ -0,0 +1,22 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.utilities.ProgressTracker.Step;
+
+/**
+ * ProgressTracker steps shared by the initiator flows. The labels double as the step names of the
+ * timers in FlowMetricsService.
+ */
+public final class FlowSteps {
+    public static final Step WAITING_FOR_STATE = new Step("Queued behind another flow on the same asset saving.");
+    public static final Step RESOLVING_ACCOUNT = new Step("Resolving the customer account.");
+    public static final Step REQUESTING_KEY = new Step("Requesting a key for the customer account.");
+    public static final Step CREATING_ACCOUNT = new Step("Asking the new bank to create the customer account.");
+    public static final Step QUERYING_VAULT = new Step("Querying the vault for the asset saving.");
+    public static final Step BUILDING_AND_VERIFYING = new Step("Building and verifying the transaction.");
+    public static final Step COLLECTING_SIGNATURES = new Step("Collecting the counterparties' signatures.");
+    public static final Step FINALISING = new Step("Notarising and recording the transaction.");
+    public static final Step SENDING_REQUEST = new Step("Sending the account name to the counterparty.");
+
+    private FlowSteps() {
+    }
+}
@@ -0,0 +1,37 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.identity.AnonymousParty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a number of fresh keys for the account, started by AccountKeyPool to refill its reservoir.
+ */
+@StartableByService
+public class GenerateAccountKeysFlow extends FlowLogic<List<AnonymousParty>> {
+
+    private final AccountInfo account;
+    private final int count;
+
+    public GenerateAccountKeysFlow(AccountInfo account, int count) {
+        this.account = account;
+        this.count = count;
+    }
+
+    @Suspendable
+    @Override
+    public List<AnonymousParty> call() throws FlowException {
+        List<AnonymousParty> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(subFlow(new RequestKeyForAccount(account)));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,48 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * One saving plan to be issued by BatchIssueFlow.
+ */
+@CordaSerializable
+public class IssueRow {
+
+    private final String customer;
+    private final String startDate;
+    private final long accumulation;
+    private final String currency;
+
+    public IssueRow(String customer, String startDate, long accumulation, String currency) {
+        this.customer = customer;
+        this.startDate = startDate;
+        this.accumulation = accumulation;
+        this.currency = currency;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public long getAccumulation() {
+        return accumulation;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    @Override
+    public String toString() {
+        return "IssueRow{" +
+                "customer= " + customer +
+                ", startDate= " + startDate +
+                ", accumulation= " + accumulation +
+                ", currency= " + currency +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.AccountKeyPool;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import com.r3.corda.lib.accounts.workflows.flows.RequestKeyForAccount;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.AnonymousParty;
+
+/**
+ * Returns a fresh key for the account, taken from the AccountKeyPool when it has one and
+ * requested from the account's host otherwise.
+ */
+public class KeyForAccountFlow extends FlowLogic<AnonymousParty> {
+
+    private final AccountInfo account;
+
+    public KeyForAccountFlow(AccountInfo account) {
+        this.account = account;
+    }
+
+    @Suspendable
+    @Override
+    public AnonymousParty call() throws FlowException {
+        AnonymousParty key = getServiceHub().cordaService(AccountKeyPool.class).take(account);
+        if (key != null) {
+            return key;
+        }
+        return subFlow(new RequestKeyForAccount(account));
+    }
+}
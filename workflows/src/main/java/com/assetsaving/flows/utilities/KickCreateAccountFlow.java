@@ -1,13 +1,17 @@
 package com.assetsaving.flows.utilities;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.AccountCacheService;
 import com.r3.corda.lib.accounts.workflows.flows.CreateAccount;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
+import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.UntrustworthyData;
 
 import java.util.Arrays;
 
+import static com.assetsaving.flows.utilities.FlowSteps.SENDING_REQUEST;
+
 public class KickCreateAccountFlow {
     @InitiatingFlow
     @StartableByRPC
@@ -16,20 +20,30 @@ public class KickCreateAccountFlow {
         private final Party destinationParty;
         private final String accountName;
 
+        private final ProgressTracker progressTracker = new ProgressTracker(SENDING_REQUEST);
+
         public InitiatorFlow(Party destinationParty, String accountName) {
             this.destinationParty = destinationParty;
             this.accountName = accountName;
         }
 
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
         @Override
         @Suspendable
         public String call() throws FlowException {
+            StepTimer timer = new StepTimer(KickCreateAccountFlow.class, progressTracker);
+            timer.next(getServiceHub(), SENDING_REQUEST);
             // We need to have been informed about this possibly anonymous identity ahead of time.
             // Create the session.
             final FlowSession session = initiateFlow(destinationParty);
             // Send a message.
             UntrustworthyData receive = session.sendAndReceive(String.class, accountName);
             String result = (String) receive.unwrap(it -> it);
+            timer.done(getServiceHub());
             return receive.toString();
         }
     }
@@ -48,8 +62,10 @@ public class KickCreateAccountFlow {
         public String call() throws FlowException {
             UntrustworthyData receive = flowSession.receive(String.class);
             String name = (String) receive.unwrap(it -> it);
-            // Create a new account.
-            subFlow(new CreateAccount(name));
+            // Create a new account unless we already host one with this name.
+            if (getServiceHub().cordaService(AccountCacheService.class).accountByName(name, getOurIdentity()) == null) {
+                subFlow(new CreateAccount(name));
+            }
             // Share the account with the counter party.
             subFlow(new ShareAccountFlow(name, Arrays.asList(flowSession.getCounterparty())));
             flowSession.send(name + " was created and shared!");
@@ -0,0 +1,164 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * The StateRef of the unconsumed head of each linearId, in an open-addressing table with linear
+ * probing over primitive arrays. The linearId is kept as its two longs and the StateRef as the four
+ * longs of its SHA-256 transaction id and its output index, so an entry costs 52 bytes of table and
+ * no objects.
+ *
+ * Removal shifts the following entries back instead of leaving tombstones, so lookups stay short
+ * however many states come and go. Not thread-safe.
+ */
+public class LinearIdIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float MAX_LOAD = 0.7f;
+    private static final int HASH_LONGS = 4;
+    // Marks a free slot; output indexes are never negative.
+    private static final int FREE = -1;
+
+    // The most and least significant bits of the linearId of slot i are at 2i and 2i + 1.
+    private long[] keys;
+    // The transaction id of slot i is at 4i to 4i + 3.
+    private long[] txHashes;
+    private int[] outputIndexes;
+    private int size = 0;
+
+    public LinearIdIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Records the head of the linearId. Returns false, leaving the index unchanged, for transaction
+     * ids that are not SHA-256.
+     */
+    public boolean put(UUID linearId, StateRef head) {
+        byte[] hash = head.getTxhash().getBytes();
+        if (hash.length != HASH_LONGS * Long.BYTES) {
+            return false;
+        }
+        long msb = linearId.getMostSignificantBits();
+        long lsb = linearId.getLeastSignificantBits();
+        int slot = find(msb, lsb);
+        if (outputIndexes[slot] == FREE) {
+            if (size + 1 > outputIndexes.length * MAX_LOAD) {
+                resize();
+                slot = find(msb, lsb);
+            }
+            keys[2 * slot] = msb;
+            keys[2 * slot + 1] = lsb;
+            size++;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(hash);
+        for (int i = 0; i < HASH_LONGS; i++) {
+            txHashes[HASH_LONGS * slot + i] = bytes.getLong();
+        }
+        outputIndexes[slot] = head.getIndex();
+        return true;
+    }
+
+    /**
+     * The head of the linearId, or null if it is not in the index.
+     */
+    public StateRef get(UUID linearId) {
+        int slot = find(linearId.getMostSignificantBits(), linearId.getLeastSignificantBits());
+        if (outputIndexes[slot] == FREE) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(HASH_LONGS * Long.BYTES);
+        for (int i = 0; i < HASH_LONGS; i++) {
+            bytes.putLong(txHashes[HASH_LONGS * slot + i]);
+        }
+        return new StateRef(new SecureHash.SHA256(bytes.array()), outputIndexes[slot]);
+    }
+
+    /**
+     * Removes the linearId if its head is this StateRef, so a late removal of an older head never
+     * drops a newer one.
+     */
+    public boolean remove(UUID linearId, StateRef head) {
+        int slot = find(linearId.getMostSignificantBits(), linearId.getLeastSignificantBits());
+        if (outputIndexes[slot] == FREE || !head.equals(get(linearId))) {
+            return false;
+        }
+        delete(slot);
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The bytes held by the table arrays, without the array headers.
+     */
+    public long tableBytes() {
+        return (long) (keys.length + txHashes.length) * Long.BYTES + (long) outputIndexes.length * Integer.BYTES;
+    }
+
+    // The slot of the linearId, or the free slot where it would go.
+    private int find(long msb, long lsb) {
+        int mask = outputIndexes.length - 1;
+        int slot = UuidTotals.hash(msb, lsb) & mask;
+        while (outputIndexes[slot] != FREE && (keys[2 * slot] != msb || keys[2 * slot + 1] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Frees the slot and moves back every following entry of the run that would no longer be found.
+    private void delete(int slot) {
+        int mask = outputIndexes.length - 1;
+        int free = slot;
+        outputIndexes[free] = FREE;
+        for (int next = (free + 1) & mask; outputIndexes[next] != FREE; next = (next + 1) & mask) {
+            int home = UuidTotals.hash(keys[2 * next], keys[2 * next + 1]) & mask;
+            // The entry stays if its home lies cyclically after the free slot, up to where it is.
+            boolean reachable = free <= next ? free < home && home <= next : free < home || home <= next;
+            if (reachable) {
+                continue;
+            }
+            move(next, free);
+            outputIndexes[next] = FREE;
+            free = next;
+        }
+    }
+
+    private void move(int from, int to) {
+        keys[2 * to] = keys[2 * from];
+        keys[2 * to + 1] = keys[2 * from + 1];
+        System.arraycopy(txHashes, HASH_LONGS * from, txHashes, HASH_LONGS * to, HASH_LONGS);
+        outputIndexes[to] = outputIndexes[from];
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldTxHashes = txHashes;
+        int[] oldOutputIndexes = outputIndexes;
+        allocate(oldOutputIndexes.length * 2);
+        for (int i = 0; i < oldOutputIndexes.length; i++) {
+            if (oldOutputIndexes[i] != FREE) {
+                int slot = find(oldKeys[2 * i], oldKeys[2 * i + 1]);
+                keys[2 * slot] = oldKeys[2 * i];
+                keys[2 * slot + 1] = oldKeys[2 * i + 1];
+                System.arraycopy(oldTxHashes, HASH_LONGS * i, txHashes, HASH_LONGS * slot, HASH_LONGS);
+                outputIndexes[slot] = oldOutputIndexes[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[2 * capacity];
+        txHashes = new long[HASH_LONGS * capacity];
+        outputIndexes = new int[capacity];
+        Arrays.fill(outputIndexes, FREE);
+    }
+}
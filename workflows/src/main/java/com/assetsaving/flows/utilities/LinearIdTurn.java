@@ -0,0 +1,109 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.LinearIdCoordinator;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static com.assetsaving.flows.utilities.FlowSteps.WAITING_FOR_STATE;
+
+/**
+ * Takes and gives back a lifecycle flow's turn on an AssetSaving at the LinearIdCoordinator.
+ *
+ * A flow that has to queue shows the WAITING_FOR_STATE step and sleeps between polls, so it holds
+ * no thread while it waits. Call leave in a finally block once the flow is done with the state.
+ *
+ * Flows on many states take their turns with takeFree or takeAll instead, which never queue.
+ */
+public final class LinearIdTurn {
+
+    static final Duration POLL_INTERVAL = Duration.ofMillis(200);
+    static final Duration MAX_WAIT = Duration.ofSeconds(60);
+
+    private LinearIdTurn() {
+    }
+
+    /**
+     * Returns once the flow holds the turn on the linearId, or throws AssetSavingBusyException if
+     * too many flows are waiting or the wait takes longer than MAX_WAIT.
+     */
+    @Suspendable
+    public static void take(FlowLogic<?> flow, UniqueIdentifier linearId, StepTimer timer) throws FlowException {
+        LinearIdCoordinator coordinator = flow.getServiceHub().cordaService(LinearIdCoordinator.class);
+        LinearIdCoordinator.Turn turn = coordinator.enter(linearId, flow.getRunId());
+        if (turn == LinearIdCoordinator.Turn.BUSY) {
+            throw new AssetSavingBusyException(linearId, coordinator.waiting(linearId));
+        }
+        if (turn == LinearIdCoordinator.Turn.ACQUIRED) {
+            return;
+        }
+
+        timer.next(flow.getServiceHub(), WAITING_FOR_STATE);
+        long deadline = System.currentTimeMillis() + MAX_WAIT.toMillis();
+        while (!coordinator.hasTurn(linearId, flow.getRunId())) {
+            if (System.currentTimeMillis() > deadline) {
+                coordinator.leave(linearId, flow.getRunId(), false);
+                throw new AssetSavingBusyException(linearId, coordinator.waiting(linearId));
+            }
+            flow.sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Takes the turn on each linearId no other flow holds, and returns those. Never waits.
+     */
+    public static Set<UniqueIdentifier> takeFree(FlowLogic<?> flow, Collection<UniqueIdentifier> linearIds) {
+        LinearIdCoordinator coordinator = flow.getServiceHub().cordaService(LinearIdCoordinator.class);
+        Set<UniqueIdentifier> taken = new LinkedHashSet<>();
+        for (UniqueIdentifier linearId : linearIds) {
+            if (coordinator.tryEnter(linearId, flow.getRunId())) {
+                taken.add(linearId);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Returns once the flow holds the turns on all the linearIds, or throws AssetSavingBusyException
+     * if some are still busy after MAX_WAIT.
+     */
+    @Suspendable
+    public static void takeAll(FlowLogic<?> flow, Set<UniqueIdentifier> linearIds) throws FlowException {
+        long deadline = System.currentTimeMillis() + MAX_WAIT.toMillis();
+        while (true) {
+            Set<UniqueIdentifier> taken = takeFree(flow, linearIds);
+            if (taken.size() == linearIds.size()) {
+                return;
+            }
+            // Holding some turns while waiting for the others could deadlock two overlapping flows.
+            leaveAll(flow, taken, false);
+            if (System.currentTimeMillis() > deadline) {
+                Set<UniqueIdentifier> busy = new LinkedHashSet<>(linearIds);
+                busy.removeAll(taken);
+                throw new AssetSavingBusyException(busy);
+            }
+            flow.sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * @param consumedState whether the flow consumed the state, in which case the turn passes on once
+     *                      the consumption is in the vault.
+     */
+    public static void leave(FlowLogic<?> flow, UniqueIdentifier linearId, boolean consumedState) {
+        flow.getServiceHub().cordaService(LinearIdCoordinator.class).leave(linearId, flow.getRunId(), consumedState);
+    }
+
+    public static void leaveAll(FlowLogic<?> flow, Collection<UniqueIdentifier> linearIds, boolean consumedState) {
+        LinearIdCoordinator coordinator = flow.getServiceHub().cordaService(LinearIdCoordinator.class);
+        for (UniqueIdentifier linearId : linearIds) {
+            coordinator.leave(linearId, flow.getRunId(), consumedState);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the notary of a transaction, so commits spread over every notary on the network.
+ *
+ * A transaction issuing new states goes to a notary picked by the notarySelection entry of the
+ * CorDapp config: "hash" (the default) of a key such as the customer name, "roundRobin", or
+ * "first". A transaction consuming states always goes to the notary of its inputs.
+ */
+public class NotarySelector {
+
+    public static final String CONFIG_KEY = "notarySelection";
+    public static final String HASH = "hash";
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String FIRST = "first";
+
+    private static final AtomicInteger next = new AtomicInteger();
+
+    private NotarySelector() {
+    }
+
+    /**
+     * The notary for issuing a state under the key. With the hash policy, every node picks the same
+     * notary for the same key, as long as they see the same notaries.
+     */
+    public static Party forIssue(ServiceHub serviceHub, String key) throws FlowException {
+        List<Party> notaries = notaries(serviceHub);
+        switch (policy(serviceHub)) {
+            case ROUND_ROBIN:
+                return notaries.get(Math.floorMod(next.getAndIncrement(), notaries.size()));
+            case FIRST:
+                return notaries.get(0);
+            default:
+                return notaries.get(Math.floorMod(key.hashCode(), notaries.size()));
+        }
+    }
+
+    /**
+     * The notary of the input, which every transaction consuming it has to use.
+     */
+    public static Party forInput(StateAndRef<? extends ContractState> input) {
+        return input.getState().getNotary();
+    }
+
+    /**
+     * Groups the inputs by their notary, keeping the input order inside each group.
+     */
+    public static <T extends ContractState> Map<Party, List<StateAndRef<T>>> groupByNotary(List<StateAndRef<T>> inputs) {
+        Map<Party, List<StateAndRef<T>>> groups = new LinkedHashMap<>();
+        for (StateAndRef<T> input : inputs) {
+            groups.computeIfAbsent(forInput(input), notary -> new ArrayList<>()).add(input);
+        }
+        return groups;
+    }
+
+    // Ordered by name, since the network map cache gives no order of its own.
+    private static List<Party> notaries(ServiceHub serviceHub) throws FlowException {
+        List<Party> notaries = new ArrayList<>(serviceHub.getNetworkMapCache().getNotaryIdentities());
+        if (notaries.isEmpty()) {
+            throw new FlowException("There is no notary on the network");
+        }
+        notaries.sort(Comparator.comparing(notary -> notary.getName().toString()));
+        return notaries;
+    }
+
+    private static String policy(ServiceHub serviceHub) {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(CONFIG_KEY) ? config.getString(CONFIG_KEY) : HASH;
+    }
+}
@@ -0,0 +1,44 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * What OnboardAccountsFlow did: accounts created, accounts that already existed, keys generated
+ * and account shares sent to counterpart banks.
+ */
+@CordaSerializable
+public class OnboardingReport {
+    private final int created;
+    private final int existing;
+    private final int keysGenerated;
+    private final int shares;
+
+    public OnboardingReport(int created, int existing, int keysGenerated, int shares) {
+        this.created = created;
+        this.existing = existing;
+        this.keysGenerated = keysGenerated;
+        this.shares = shares;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getExisting() {
+        return existing;
+    }
+
+    public int getKeysGenerated() {
+        return keysGenerated;
+    }
+
+    public int getShares() {
+        return shares;
+    }
+
+    @Override
+    public String toString() {
+        return "OnboardingReport(created=" + created + ", existing=" + existing + ", keysGenerated=" + keysGenerated
+                + ", shares=" + shares + ")";
+    }
+}
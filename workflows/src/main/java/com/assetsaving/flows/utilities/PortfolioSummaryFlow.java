@@ -0,0 +1,50 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.services.PortfolioService;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * Returns the number and total balance of the unconsumed savings of an account, or of every bank
+ * when no account is given, from the running totals of PortfolioService without a vault query.
+ */
+@StartableByRPC
+public class PortfolioSummaryFlow extends FlowLogic<List<PortfolioTotal>> {
+
+    private final String account;
+
+    public PortfolioSummaryFlow() {
+        this(null);
+    }
+
+    public PortfolioSummaryFlow(String account) {
+        this.account = account;
+    }
+
+    @Suspendable
+    @Override
+    public List<PortfolioTotal> call() throws FlowException {
+        PortfolioService portfolio = getServiceHub().cordaService(PortfolioService.class);
+        if (account == null) {
+            return portfolio.bankTotals();
+        }
+
+        // Prefer the account we host; otherwise one shared with us under that name.
+        AccountCacheService accountCache = getServiceHub().cordaService(AccountCacheService.class);
+        StateAndRef<AccountInfo> accountRef = accountCache.accountByName(account, getOurIdentity());
+        if (accountRef == null) {
+            accountRef = accountCache.accountByName(account);
+        }
+        if (accountRef == null) {
+            throw new FlowException("Account " + account + " doesn't exist");
+        }
+        return portfolio.accountTotals(accountRef.getState().getData().getIdentifier().getId(), account);
+    }
+}
@@ -0,0 +1,39 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * The number of unconsumed savings of one account or bank in one currency and their total balance,
+ * as returned by PortfolioSummaryFlow.
+ */
+@CordaSerializable
+public class PortfolioTotal {
+    private final String name;
+    private final String currency;
+    private final long count;
+    private final long balance;
+
+    public PortfolioTotal(String name, String currency, long count, long balance) {
+        this.name = name;
+        this.currency = currency;
+        this.count = count;
+        this.balance = balance;
+    }
+
+    // The account name or the bank's X500 name.
+    public String getName() {
+        return name;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+}
@@ -2,46 +2,90 @@ package com.assetsaving.flows.utilities;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
-import com.r3.corda.lib.accounts.workflows.UtilitiesKt;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.schemas.AssetSavingSchemaV1.PersistentAssetSaving;
 import com.assetsaving.states.AssetSavingState;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.flows.FlowException;
 import net.corda.core.flows.FlowLogic;
 import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
 import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.*;
 
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Lists the AssetSavings of an account one page at a time, sorted by a column of AssetSavingSchemaV1.
+ */
 @StartableByRPC
-public class QuerybyAccount extends FlowLogic<List<AssetSavingStateModel>> {
+public class QuerybyAccount extends FlowLogic<AssetSavingPage> {
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final String SORT_BY_START_DATE = "startDate";
+    public static final String SORT_BY_ACCUMULATION = "accumulation";
 
     private final String name;
+    private final int pageNumber;
+    private final int pageSize;
+    private final String sortBy;
+    private final boolean descending;
+
     public QuerybyAccount(String name) {
+        this(name, DEFAULT_PAGE_NUM, DEFAULT_PAGE_SIZE, SORT_BY_START_DATE, false);
+    }
+
+    public QuerybyAccount(String name, int pageNumber, int pageSize, String sortBy, boolean descending) {
         this.name = name;
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+        this.sortBy = sortBy;
+        this.descending = descending;
     }
 
     @Override
     @Suspendable
-    public List<AssetSavingStateModel> call() throws FlowException {
-        AccountInfo myAccount = UtilitiesKt.getAccountService(this).accountInfo(name).get(0).getState().getData();
+    public AssetSavingPage call() throws FlowException {
+        if (!SORT_BY_START_DATE.equals(sortBy) && !SORT_BY_ACCUMULATION.equals(sortBy)) {
+            throw new FlowException("Incorrect sort column " + sortBy + ". Please set \"" + SORT_BY_START_DATE
+                    + "\" or \"" + SORT_BY_ACCUMULATION + "\".");
+        }
+        StateAndRef<AccountInfo> myAccountRef = getServiceHub().cordaService(AccountCacheService.class).accountByName(name);
+        if (myAccountRef == null) {
+            throw new FlowException("Account " + name + " doesn't exist");
+        }
+        AccountInfo myAccount = myAccountRef.getState().getData();
         UUID id = myAccount.getIdentifier().getId();
-        QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria().withExternalIds(Arrays.asList(id));
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withExternalIds(Collections.singletonList(id))
+                .and(AssetSavingCriteria.all());
+
+        // The linearId breaks ties, so the pages do not overlap.
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort sort = new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Custom(PersistentAssetSaving.class, sortBy), direction),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.LinearStateAttribute.UUID), direction)));
 
-        List<StateAndRef<AssetSavingState>> AssetSavingStateAndRefs =  getServiceHub().getVaultService().queryBy(AssetSavingState.class,criteria).getStates();
+        Vault.Page<AssetSavingState> page = getServiceHub().getVaultService().queryBy(AssetSavingState.class, criteria,
+                new PageSpecification(pageNumber, pageSize), sort);
 
-        if(AssetSavingStateAndRefs.size() == 0){
-            return Collections.emptyList();
+        // Every state of the page belongs to the queried account, so its name is resolved once
+        // for the whole page, and each bank name once per bank.
+        String customer = myAccount.getName();
+        Map<Party, String> bankNames = new HashMap<>();
+        List<AssetSavingStateModel> models = new ArrayList<>(page.getStates().size());
+        for (StateAndRef<AssetSavingState> stateAndRef : page.getStates()) {
+            AssetSavingState state = stateAndRef.getState().getData();
+            String bank = bankNames.computeIfAbsent(state.getBank(), party -> party.getName().toString());
+            models.add(new AssetSavingStateModel(bank, customer, state.getLinearId().getId(),
+                    state.getStartDate().getTime(), state.getAccumulation().getQuantity(),
+                    state.getAccumulation().getToken().getCurrencyCode()));
         }
-        return AssetSavingStateAndRefs.stream().map(assetSavingStateAndRefs -> {
-            AssetSavingState state = assetSavingStateAndRefs.getState().getData();
-            String bank = state.getBank().toString();
-            String customer = UtilitiesKt.getAccountService(this)
-                    .accountInfo(state.getCustomer().getOwningKey()).getState().getData().getName();
-            return new AssetSavingStateModel(bank, customer);
-        }).collect(Collectors.toList());
+        return new AssetSavingPage(pageNumber, pageSize, page.getTotalStatesAvailable(), models);
     }
 }
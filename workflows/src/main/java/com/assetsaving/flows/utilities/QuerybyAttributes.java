@@ -0,0 +1,71 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.List;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Queries unconsumed AssetSavingStates by their schema attributes. Every filter is optional
+ * and is evaluated against the indexed columns of AssetSavingSchemaV1.
+ */
+@StartableByRPC
+public class QuerybyAttributes extends FlowLogic<List<StateAndRef<AssetSavingState>>> {
+
+    // Upper bound used when only a lower start date is given; Instant.MAX does not fit a SQL timestamp.
+    private static final Instant LATEST_START_DATE = Instant.parse("9999-12-31T00:00:00Z");
+
+    private final Party bank;
+    private final String currency;
+    private final Instant startDateFrom;
+    private final Instant startDateTo;
+    private final Long minAccumulation;
+    private final int pageSize;
+
+    public QuerybyAttributes(Party bank, String currency, String startDateFrom, String startDateTo,
+                             Long minAccumulation, int pageSize) throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        this.bank = bank;
+        this.currency = currency;
+        this.startDateFrom = startDateFrom == null ? null : dateFormat.parse(startDateFrom).toInstant();
+        this.startDateTo = startDateTo == null ? null : dateFormat.parse(startDateTo).toInstant();
+        this.minAccumulation = minAccumulation;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    @Suspendable
+    public List<StateAndRef<AssetSavingState>> call() throws FlowException {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        if (bank != null) {
+            criteria = criteria.and(AssetSavingCriteria.bank(bank));
+        }
+        if (currency != null) {
+            criteria = criteria.and(AssetSavingCriteria.currency(currency));
+        }
+        if (startDateFrom != null || startDateTo != null) {
+            criteria = criteria.and(AssetSavingCriteria.startDateBetween(
+                    startDateFrom == null ? Instant.EPOCH : startDateFrom,
+                    startDateTo == null ? LATEST_START_DATE : startDateTo));
+        }
+        if (minAccumulation != null) {
+            criteria = criteria.and(AssetSavingCriteria.accumulationAtLeast(minAccumulation));
+        }
+
+        return getServiceHub().getVaultService().queryBy(AssetSavingState.class, criteria,
+                new PageSpecification(DEFAULT_PAGE_NUM, pageSize)).getStates();
+    }
+}
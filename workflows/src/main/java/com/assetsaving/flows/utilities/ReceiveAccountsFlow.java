@@ -0,0 +1,65 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import net.corda.core.flows.ReceiveTransactionFlow;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.List;
+
+/**
+ * Records a chunk of accounts sent by ShareAccountsFlow and returns their number. Only accounts
+ * hosted by the sending node are accepted, and they are recorded with ALL_VISIBLE so they can be
+ * resolved from the vault afterwards.
+ */
+public class ReceiveAccountsFlow extends FlowLogic<Integer> {
+
+    private final FlowSession session;
+
+    public ReceiveAccountsFlow(FlowSession session) {
+        this.session = session;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        int count = session.receive(Integer.class).unwrap(it -> {
+            if (it < 0 || it > ShareAccountsFlow.MAX_ACCOUNTS) {
+                throw new IllegalArgumentException("Too many accounts in one chunk: " + it);
+            }
+            return it;
+        });
+        for (int i = 0; i < count; i++) {
+            subFlow(new ReceiveAccountFlow(session));
+        }
+        return count;
+    }
+
+    private static class ReceiveAccountFlow extends ReceiveTransactionFlow {
+
+        private final Party sender;
+
+        private ReceiveAccountFlow(FlowSession session) {
+            super(session, true, StatesToRecord.ALL_VISIBLE);
+            this.sender = session.getCounterparty();
+        }
+
+        @Override
+        protected void checkBeforeRecording(SignedTransaction stx) {
+            List<AccountInfo> accounts = stx.getTx().outputsOfType(AccountInfo.class);
+            if (accounts.isEmpty() || accounts.size() != stx.getTx().getOutputs().size()) {
+                throw new IllegalArgumentException("This must be an AccountInfo transaction");
+            }
+            for (AccountInfo account : accounts) {
+                if (!account.getHost().equals(sender)) {
+                    throw new IllegalArgumentException("Account " + account.getName() + " is not hosted by " + sender);
+                }
+            }
+        }
+    }
+}
@@ -2,9 +2,8 @@ package com.assetsaving.flows.utilities;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
-import com.r3.corda.lib.accounts.workflows.UtilitiesKt;
+import com.assetsaving.flows.services.AccountCacheService;
 import com.r3.corda.lib.accounts.workflows.flows.ShareAccountInfo;
-import com.r3.corda.lib.accounts.workflows.services.AccountService;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.flows.FlowException;
 import net.corda.core.flows.FlowLogic;
@@ -29,12 +28,11 @@ public class ShareAccountFlow extends FlowLogic<String> {
     @Override
     @Suspendable
     public String call() throws FlowException {
-        AccountService accountService = UtilitiesKt.getAccountService(this);
-        List<StateAndRef<AccountInfo>> accountInfoList = accountService.accountInfo(accountName);
-        if(accountInfoList.size()==0){
+        StateAndRef<AccountInfo> accountInfo = getServiceHub().cordaService(AccountCacheService.class).accountByName(accountName);
+        if(accountInfo == null){
             throw new FlowException("Account doesn't exist");
         }
-        subFlow(new ShareAccountInfo(accountInfoList.get(0), recipients));
+        subFlow(new ShareAccountInfo(accountInfo, recipients));
         return "" + accountName +" has been shared to " +recipients+".";
     }
 }
@@ -0,0 +1,49 @@
+package com.assetsaving.flows.utilities;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import net.corda.core.flows.SendTransactionFlow;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.List;
+
+/**
+ * Sends a chunk of our accounts over an existing session: their number, then the transaction of
+ * each account. ReceiveAccountsFlow is the other side. An empty chunk is valid, and can mark the
+ * end of a stream of chunks.
+ */
+public class ShareAccountsFlow extends FlowLogic<Integer> {
+
+    // Upper bound on a chunk, checked by ReceiveAccountsFlow before it records anything.
+    public static final int MAX_ACCOUNTS = 500;
+
+    private final FlowSession session;
+    private final List<StateAndRef<AccountInfo>> accounts;
+
+    public ShareAccountsFlow(FlowSession session, List<StateAndRef<AccountInfo>> accounts) {
+        if (accounts.size() > MAX_ACCOUNTS) {
+            throw new IllegalArgumentException("At most " + MAX_ACCOUNTS + " accounts can be shared at once.");
+        }
+        this.session = session;
+        this.accounts = accounts;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        session.send(accounts.size());
+        for (StateAndRef<AccountInfo> account : accounts) {
+            SignedTransaction transaction = getServiceHub().getValidatedTransactions()
+                    .getTransaction(account.getRef().getTxhash());
+            if (transaction == null) {
+                throw new FlowException("The transaction of account " + account.getState().getData().getName() + " is missing");
+            }
+            subFlow(new SendTransactionFlow(session, transaction));
+        }
+        return accounts.size();
+    }
+}
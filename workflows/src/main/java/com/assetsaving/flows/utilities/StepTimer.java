@@ -0,0 +1,62 @@
+package com.assetsaving.flows.utilities;
+
+import com.assetsaving.flows.services.FlowMetricsService;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.UUID;
+
+/**
+ * Moves a flow's ProgressTracker from step to step and records the time spent in each step, and
+ * in the whole flow, in FlowMetricsService.
+ *
+ * Times are wall-clock, so a step that suspends waiting for a counterparty or the notary is
+ * charged for the wait. A step that throws is not recorded, and neither is a step or total that
+ * spans a restart of the node: the timer is checkpointed with its flow, and a System.nanoTime mark
+ * taken by another JVM says nothing about this one's clock.
+ */
+public class StepTimer {
+    public static final String TOTAL = "Total";
+
+    // Tells the marks of this JVM from those restored from a checkpoint another one wrote.
+    private static final UUID JVM = UUID.randomUUID();
+
+    private final String flow;
+    private final ProgressTracker tracker;
+    private final long flowStartedAt = System.nanoTime();
+    private final UUID flowStartedIn = JVM;
+    private ProgressTracker.Step current;
+    private long stepStartedAt;
+    private UUID stepStartedIn;
+
+    public StepTimer(Class<?> flowClass, ProgressTracker tracker) {
+        // InitiatorFlow is nested in the class naming the flow, e.g. IssueFlow.
+        Class<?> named = flowClass.getEnclosingClass() != null ? flowClass.getEnclosingClass() : flowClass;
+        this.flow = named.getSimpleName();
+        this.tracker = tracker;
+    }
+
+    public void next(ServiceHub serviceHub, ProgressTracker.Step step) {
+        long now = System.nanoTime();
+        recordCurrent(serviceHub, now);
+        tracker.setCurrentStep(step);
+        current = step;
+        stepStartedAt = now;
+        stepStartedIn = JVM;
+    }
+
+    public void done(ServiceHub serviceHub) {
+        long now = System.nanoTime();
+        recordCurrent(serviceHub, now);
+        current = null;
+        if (JVM.equals(flowStartedIn)) {
+            serviceHub.cordaService(FlowMetricsService.class).record(flow, TOTAL, now - flowStartedAt);
+        }
+    }
+
+    private void recordCurrent(ServiceHub serviceHub, long now) {
+        if (current != null && JVM.equals(stepStartedIn)) {
+            serviceHub.cordaService(FlowMetricsService.class).record(flow, current.getLabel(), now - stepStartedAt);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.assetsaving.flows.utilities;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * The new accumulation of one AssetSavingState to be updated by BulkUpdateFlow.
+ */
+@CordaSerializable
+public class UpdateRow {
+
+    private final UniqueIdentifier linearId;
+    private final long newAccumulation;
+
+    public UpdateRow(UniqueIdentifier linearId, long newAccumulation) {
+        this.linearId = linearId;
+        this.newAccumulation = newAccumulation;
+    }
+
+    public UniqueIdentifier getLinearId() {
+        return linearId;
+    }
+
+    public long getNewAccumulation() {
+        return newAccumulation;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateRow{" +
+                "linearId= " + linearId +
+                ", newAccumulation= " + newAccumulation +
+                '}';
+    }
+}
@@ -0,0 +1,135 @@
+package com.assetsaving.flows.utilities;
+
+import java.util.UUID;
+
+/**
+ * A running count and sum per UUID, in an open-addressing table with linear probing over
+ * primitive arrays. A UUID is kept as its two longs, so an entry costs 28 bytes of table and a
+ * bit of occupancy, and no objects, where a HashMap of UUID to a totals object costs well over 100.
+ *
+ * Entries are never removed: an account whose savings are all consumed keeps a zero entry. A count
+ * may go negative, e.g. when a consumption is applied before the matching production, and the
+ * entry stays in place. Not thread-safe.
+ */
+public class UuidTotals {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float MAX_LOAD = 0.8f;
+
+    // The most and least significant bits of the UUID of slot i are at 2i and 2i + 1.
+    private long[] keys;
+    // Bit i is set when slot i holds an entry.
+    private long[] occupied;
+    private int[] counts;
+    private long[] sums;
+    private int size = 0;
+
+    public UuidTotals() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds the deltas to the totals of the UUID, creating its entry if needed.
+     */
+    public void add(UUID id, int countDelta, long sumDelta) {
+        add(id.getMostSignificantBits(), id.getLeastSignificantBits(), countDelta, sumDelta);
+    }
+
+    public void add(long msb, long lsb, int countDelta, long sumDelta) {
+        int slot = find(msb, lsb);
+        if (!isOccupied(slot)) {
+            if (size + 1 > counts.length * MAX_LOAD) {
+                resize();
+                slot = find(msb, lsb);
+            }
+            keys[2 * slot] = msb;
+            keys[2 * slot + 1] = lsb;
+            occupy(slot);
+            size++;
+        }
+        counts[slot] += countDelta;
+        sums[slot] += sumDelta;
+    }
+
+    /**
+     * The count of the UUID, 0 if it has none.
+     */
+    public int count(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return isOccupied(slot) ? counts[slot] : 0;
+    }
+
+    /**
+     * The sum of the UUID, 0 if it has none.
+     */
+    public long sum(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return isOccupied(slot) ? sums[slot] : 0;
+    }
+
+    /**
+     * The number of UUIDs with an entry.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The bytes held by the table arrays, without the array headers.
+     */
+    public long tableBytes() {
+        return (long) (keys.length + sums.length + occupied.length) * Long.BYTES + (long) counts.length * Integer.BYTES;
+    }
+
+    // The slot of the UUID, or the free slot where it would go.
+    private int find(long msb, long lsb) {
+        int mask = counts.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (isOccupied(slot) && (keys[2 * slot] != msb || keys[2 * slot + 1] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean isOccupied(int slot) {
+        return (occupied[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void occupy(int slot) {
+        occupied[slot >>> 6] |= 1L << slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldOccupied = occupied;
+        int[] oldCounts = counts;
+        long[] oldSums = sums;
+        allocate(oldCounts.length * 2);
+        for (int i = 0; i < oldCounts.length; i++) {
+            if ((oldOccupied[i >>> 6] & (1L << i)) != 0) {
+                int slot = find(oldKeys[2 * i], oldKeys[2 * i + 1]);
+                keys[2 * slot] = oldKeys[2 * i];
+                keys[2 * slot + 1] = oldKeys[2 * i + 1];
+                occupy(slot);
+                counts[slot] = oldCounts[i];
+                sums[slot] = oldSums[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[2 * capacity];
+        occupied = new long[(capacity + 63) >>> 6];
+        counts = new int[capacity];
+        sums = new long[capacity];
+    }
+
+    // Random UUIDs are well spread already; the mix covers name-based and sequential ones.
+    static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,86 @@
+package com.assetsaving;
+
+import com.assetsaving.flows.CancelFlow;
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.utilities.AccumulationTotal;
+import com.assetsaving.flows.utilities.AggregateAccumulationFlow;
+import com.assetsaving.states.AssetSavingState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AggregateAccumulationFlowTest {
+
+    private MockNetwork network;
+    private StartedMockNode bankA;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(new MockNetworkParameters().withCordappsForAllNodes(ImmutableList.of(
+                TestCordapp.findCordapp("com.assetsaving.contracts"),
+                TestCordapp.findCordapp("com.assetsaving.flows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.contracts"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"))));
+        bankA = network.createPartyNode(new CordaX500Name("BankA", "London", "GB"));
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void totalsOnlyUnconsumedSavings() throws Exception {
+        String startDate = LocalDate.now().plusDays(30).toString();
+        run(bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 100L)));
+        run(bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 300L)));
+        SignedTransaction cancelled = run(bankA.startFlow(new IssueFlow.InitiatorFlow("bob", startDate, 1000L)));
+        run(bankA.startFlow(new IssueFlow.InitiatorFlow("bob", startDate, 50L)));
+        AssetSavingState bobSaving = cancelled.getTx().outputsOfType(AssetSavingState.class).get(0);
+        run(bankA.startFlow(new CancelFlow.InitiatorFlow(bobSaving.getLinearId(), "bob")));
+
+        List<AccumulationTotal> byBank = run(bankA.startFlow(
+                new AggregateAccumulationFlow(AggregateAccumulationFlow.BANK, 0, 10)));
+        assertEquals(1, byBank.size());
+        assertEquals(bankA.getInfo().getLegalIdentities().get(0).getName().toString(), byBank.get(0).getGroup());
+        assertEquals("USD", byBank.get(0).getCurrency());
+        assertEquals(3, byBank.get(0).getCount());
+        assertEquals(450, byBank.get(0).getSum());
+        assertEquals(50, byBank.get(0).getMin());
+        assertEquals(300, byBank.get(0).getMax());
+
+        List<AccumulationTotal> byAccount = run(bankA.startFlow(
+                new AggregateAccumulationFlow(AggregateAccumulationFlow.ACCOUNT, 0, 10)));
+        assertEquals(2, byAccount.size());
+        long aliceSum = byAccount.stream().filter(total -> "alice".equals(total.getGroup()))
+                .mapToLong(AccumulationTotal::getSum).sum();
+        long bobSum = byAccount.stream().filter(total -> "bob".equals(total.getGroup()))
+                .mapToLong(AccumulationTotal::getSum).sum();
+        assertEquals(400, aliceSum);
+        assertEquals(50, bobSum);
+
+        List<AccumulationTotal> secondPage = run(bankA.startFlow(
+                new AggregateAccumulationFlow(AggregateAccumulationFlow.ACCOUNT, 1, 10)));
+        assertEquals(1, secondPage.size());
+    }
+
+    private <T> T run(CordaFuture<T> future) throws Exception {
+        network.runNetwork();
+        return future.get();
+    }
+}
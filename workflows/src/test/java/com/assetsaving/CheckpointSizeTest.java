@@ -0,0 +1,188 @@
+package com.assetsaving;
+
+import com.assetsaving.flows.AccumulateFlow;
+import com.assetsaving.flows.BatchIssueFlow;
+import com.assetsaving.flows.BulkCancelFlow;
+import com.assetsaving.flows.BulkUpdateFlow;
+import com.assetsaving.flows.CancelFlow;
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.TransferFlow;
+import com.assetsaving.flows.UpdateFlow;
+import com.assetsaving.flows.utilities.AssetSavingLookup;
+import com.assetsaving.flows.utilities.IssueRow;
+import com.assetsaving.flows.utilities.UpdateRow;
+import com.assetsaving.states.AssetSavingState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestClock;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs every initiator against the MockNetwork one message round at a time and reads the size of
+ * the checkpoints the nodes hold after each round, i.e. at the suspension each flow is waiting in.
+ * The test fails when a checkpoint of one of our initiators or responders is larger than the
+ * budget, which is 64 KiB unless set with -Dcheckpoint.budgetBytes.
+ */
+public class CheckpointSizeTest {
+
+    private static final long DEFAULT_BUDGET_BYTES = 64 * 1024;
+    private static final long DEADLINE_MILLIS = 300_000;
+    private static final long ROUND_PAUSE_MILLIS = 5;
+    // Enough rows for the bulk flows to hold a plan of several chunks across their suspensions.
+    private static final int BATCH_ROWS = 2 * AssetSavingLookup.MAX_STATES_PER_TRANSACTION + 1;
+
+    // The checkpoint and the serialized fiber of every flow the node is running.
+    private static final String CHECKPOINT_SIZES = "SELECT m.flow_name,"
+            + " LENGTH(b.checkpoint_value) + COALESCE(LENGTH(b.flow_state), 0)"
+            + " FROM node_checkpoint_blobs b LEFT JOIN node_flow_metadata m ON m.flow_id = b.flow_id";
+
+    private MockNetwork network;
+    private StartedMockNode bankA;
+    private StartedMockNode bankB;
+    private Party partyB;
+    // The largest checkpoint seen per flow class.
+    private final Map<String, Long> largest = new TreeMap<>();
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(new MockNetworkParameters().withCordappsForAllNodes(ImmutableList.of(
+                TestCordapp.findCordapp("com.assetsaving.contracts"),
+                TestCordapp.findCordapp("com.assetsaving.flows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.contracts"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"))));
+        bankA = network.createPartyNode(new CordaX500Name("BankA", "London", "GB"));
+        bankB = network.createPartyNode(new CordaX500Name("BankB", "New York", "US"));
+        partyB = bankB.getInfo().getLegalIdentities().get(0);
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void checkpointsStayWithinBudget() throws Exception {
+        String startDate = LocalDate.now().plusDays(30).toString();
+
+        AssetSavingState saving = output(run(bankA, new IssueFlow.InitiatorFlow("alice", startDate, 100L)));
+        saving = output(run(bankA, new UpdateFlow.InitiatorFlow(saving.getLinearId(), 150L, "alice")));
+        // BankB does not know "carol" yet, so the transfer kicks it to create the account as well.
+        run(bankA, new TransferFlow.InitiatorFlow(saving.getLinearId(), partyB, "alice", "carol", startDate, 200L));
+
+        AssetSavingState cancelled = output(run(bankA, new IssueFlow.InitiatorFlow("dave", startDate, 100L)));
+        run(bankA, new CancelFlow.InitiatorFlow(cancelled.getLinearId(), "dave"));
+
+        List<IssueRow> issueRows = new ArrayList<>();
+        for (int i = 0; i < BATCH_ROWS; i++) {
+            issueRows.add(new IssueRow("customer" + i, startDate, 100L, "USD"));
+        }
+        List<SecureHash> batches = run(bankA, new BatchIssueFlow.InitiatorFlow(issueRows));
+        assertTrue("The batch should span several chunks: " + batches, batches.size() > 1);
+        List<UniqueIdentifier> linearIds = new ArrayList<>();
+        for (StateAndRef<AssetSavingState> issued : outputs(batches)) {
+            linearIds.add(issued.getState().getData().getLinearId());
+        }
+        List<UpdateRow> updateRows = new ArrayList<>();
+        for (UniqueIdentifier linearId : linearIds) {
+            updateRows.add(new UpdateRow(linearId, 150L));
+        }
+        List<StateRef> updated = new ArrayList<>();
+        for (StateAndRef<AssetSavingState> output : outputs(run(bankA, new BulkUpdateFlow.InitiatorFlow(updateRows)))) {
+            updated.add(output.getRef());
+        }
+
+        // Move past the start date on the bank and the notary, so the accumulations are due and in the time window.
+        for (StartedMockNode node : ImmutableList.of(bankA, network.getDefaultNotaryNode())) {
+            ((TestClock) node.getServices().getClock()).advanceBy(Duration.ofDays(31));
+        }
+        run(bankA, new AccumulateFlow.InitiatorFlow(updated));
+        run(bankA, new BulkCancelFlow.InitiatorFlow(linearIds));
+
+        long budget = Long.getLong("checkpoint.budgetBytes", DEFAULT_BUDGET_BYTES);
+        List<String> overBudget = new ArrayList<>();
+        for (Map.Entry<String, Long> flow : largest.entrySet()) {
+            if (flow.getKey().startsWith("com.assetsaving.") && flow.getValue() > budget) {
+                overBudget.add(flow.getKey() + " (" + flow.getValue() + " bytes)");
+            }
+        }
+
+        for (Class<?> flow : ImmutableList.of(TransferFlow.InitiatorFlow.class, TransferFlow.Responder.class,
+                BatchIssueFlow.InitiatorFlow.class, BulkUpdateFlow.InitiatorFlow.class, BulkCancelFlow.InitiatorFlow.class)) {
+            assertTrue("No checkpoint of " + flow.getName() + " was captured: " + largest,
+                    largest.containsKey(flow.getName()));
+        }
+        assertTrue("Over the budget of " + budget + " bytes: " + overBudget + ", largest checkpoints: " + largest,
+                overBudget.isEmpty());
+    }
+
+    private <T> T run(StartedMockNode node, FlowLogic<T> flow) throws Exception {
+        CordaFuture<T> future = node.startFlow(flow);
+        // A flow waiting for its turn on a state sleeps, so keep pumping until the deadline rather than until the
+        // network runs dry.
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        while (!future.isDone() && System.currentTimeMillis() < deadline) {
+            network.runNetwork(1);
+            recordCheckpoints(bankA);
+            recordCheckpoints(bankB);
+            Thread.sleep(ROUND_PAUSE_MILLIS);
+        }
+        network.runNetwork();
+        return future.get();
+    }
+
+    private void recordCheckpoints(StartedMockNode node) {
+        node.transaction(() -> {
+            try (PreparedStatement statement = node.getServices().jdbcSession().prepareStatement(CHECKPOINT_SIZES);
+                 ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    String flow = rows.getString(1) == null ? "unnamed flow" : rows.getString(1);
+                    largest.merge(flow, rows.getLong(2), Math::max);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not read the checkpoints of " + node.getInfo(), e);
+            }
+            return null;
+        });
+    }
+
+    private static AssetSavingState output(SignedTransaction stx) {
+        return stx.getTx().outputsOfType(AssetSavingState.class).get(0);
+    }
+
+    private List<StateAndRef<AssetSavingState>> outputs(List<SecureHash> transactionIds) {
+        List<StateAndRef<AssetSavingState>> outputs = new ArrayList<>();
+        for (SecureHash transactionId : transactionIds) {
+            outputs.addAll(bankA.getServices().getValidatedTransactions().getTransaction(transactionId)
+                    .getTx().outRefsOfType(AssetSavingState.class));
+        }
+        return outputs;
+    }
+}
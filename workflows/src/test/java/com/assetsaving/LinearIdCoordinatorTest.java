@@ -0,0 +1,119 @@
+package com.assetsaving;
+
+import com.assetsaving.flows.BulkUpdateFlow;
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.UpdateFlow;
+import com.assetsaving.flows.services.LinearIdCoordinator;
+import com.assetsaving.flows.utilities.UpdateRow;
+import com.assetsaving.states.AssetSavingState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LinearIdCoordinatorTest {
+
+    private static final int CONCURRENT_UPDATES = 3;
+    private static final long DEADLINE_MILLIS = 60_000;
+
+    private MockNetwork network;
+    private StartedMockNode bankA;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(new MockNetworkParameters().withCordappsForAllNodes(ImmutableList.of(
+                TestCordapp.findCordapp("com.assetsaving.contracts"),
+                TestCordapp.findCordapp("com.assetsaving.flows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.contracts"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"))));
+        bankA = network.createPartyNode(new CordaX500Name("BankA", "London", "GB"));
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void concurrentUpdatesQueueInsteadOfConflicting() throws Exception {
+        String startDate = LocalDate.now().plusDays(30).toString();
+        CordaFuture<SignedTransaction> issue = bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 100L));
+        network.runNetwork();
+        UniqueIdentifier linearId = issue.get().getTx().outputsOfType(AssetSavingState.class).get(0).getLinearId();
+
+        // All updates start before the network is pumped, so they all ask for the same head.
+        List<CordaFuture<SignedTransaction>> updates = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_UPDATES; i++) {
+            updates.add(bankA.startFlow(new UpdateFlow.InitiatorFlow(linearId, 150L + 10 * i, "alice")));
+        }
+        // The queued flows sleep between polls, so keep pumping until they are all done.
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        while (!updates.stream().allMatch(CordaFuture::isDone) && System.currentTimeMillis() < deadline) {
+            network.runNetwork();
+            Thread.sleep(50);
+        }
+
+        Set<StateRef> inputs = new HashSet<>();
+        for (CordaFuture<SignedTransaction> update : updates) {
+            try {
+                inputs.addAll(update.get().getTx().getInputs());
+            } catch (ExecutionException e) {
+                fail("An update failed instead of queueing: " + e.getCause());
+            }
+        }
+        // Each update consumed the head left by the one before it, so none lost at the notary.
+        assertEquals(CONCURRENT_UPDATES, inputs.size());
+
+        LinearIdCoordinator coordinator = bankA.getServices().cordaService(LinearIdCoordinator.class);
+        assertTrue("No update had to queue", coordinator.getQueued() >= 1);
+        assertEquals(0, coordinator.getRejected());
+    }
+
+    @Test
+    public void bulkUpdateWaitsForTheUpdateOnTheSameState() throws Exception {
+        String startDate = LocalDate.now().plusDays(30).toString();
+        CordaFuture<SignedTransaction> issue = bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 100L));
+        network.runNetwork();
+        UniqueIdentifier linearId = issue.get().getTx().outputsOfType(AssetSavingState.class).get(0).getLinearId();
+
+        CordaFuture<SignedTransaction> update = bankA.startFlow(new UpdateFlow.InitiatorFlow(linearId, 150L, "alice"));
+        CordaFuture<List<SecureHash>> bulkUpdate = bankA.startFlow(new BulkUpdateFlow.InitiatorFlow(
+                Collections.singletonList(new UpdateRow(linearId, 160L))));
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        while (!(update.isDone() && bulkUpdate.isDone()) && System.currentTimeMillis() < deadline) {
+            network.runNetwork();
+            Thread.sleep(50);
+        }
+
+        // Both succeeded on a different head, so neither lost at the notary.
+        SignedTransaction bulkTransaction = bankA.getServices().getValidatedTransactions()
+                .getTransaction(bulkUpdate.get().get(0));
+        Set<StateRef> inputs = new HashSet<>(update.get().getTx().getInputs());
+        inputs.addAll(bulkTransaction.getTx().getInputs());
+        assertEquals(2, inputs.size());
+    }
+}
@@ -0,0 +1,61 @@
+package com.assetsaving;
+
+import com.assetsaving.flows.utilities.LinearIdIndex;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LinearIdIndexTest {
+
+    @Test
+    public void keepsTheLatestHead() {
+        LinearIdIndex index = new LinearIdIndex();
+        UUID linearId = UUID.randomUUID();
+        StateRef issued = new StateRef(SecureHash.randomSHA256(), 0);
+        StateRef updated = new StateRef(SecureHash.randomSHA256(), 1);
+
+        index.put(linearId, issued);
+        index.put(linearId, updated);
+        // The issued state is consumed after the update is already indexed.
+        assertFalse(index.remove(linearId, issued));
+        assertEquals(updated, index.get(linearId));
+
+        assertTrue(index.remove(linearId, updated));
+        assertNull(index.get(linearId));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void matchesAMapThroughPutsAndRemoves() {
+        LinearIdIndex index = new LinearIdIndex();
+        Map<UUID, StateRef> expected = new HashMap<>();
+        Random random = new Random(42);
+        UUID[] ids = new UUID[20_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID();
+        }
+
+        for (int step = 0; step < 200_000; step++) {
+            UUID linearId = ids[random.nextInt(ids.length)];
+            if (random.nextInt(3) == 0 && expected.containsKey(linearId)) {
+                assertTrue(index.remove(linearId, expected.remove(linearId)));
+            } else {
+                StateRef head = new StateRef(SecureHash.randomSHA256(), random.nextInt(4));
+                index.put(linearId, head);
+                expected.put(linearId, head);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (UUID linearId : ids) {
+            assertEquals(expected.get(linearId), index.get(linearId));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.assetsaving;
+
+import com.assetsaving.flows.CancelFlow;
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.utilities.PortfolioSummaryFlow;
+import com.assetsaving.flows.utilities.PortfolioTotal;
+import com.assetsaving.states.AssetSavingState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PortfolioSummaryFlowTest {
+
+    private MockNetwork network;
+    private StartedMockNode bankA;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(new MockNetworkParameters().withCordappsForAllNodes(ImmutableList.of(
+                TestCordapp.findCordapp("com.assetsaving.contracts"),
+                TestCordapp.findCordapp("com.assetsaving.flows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.contracts"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"))));
+        bankA = network.createPartyNode(new CordaX500Name("BankA", "London", "GB"));
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void followsIssuesAndCancels() throws Exception {
+        String startDate = LocalDate.now().plusDays(30).toString();
+        run(bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 100L)));
+        SignedTransaction issued = run(bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 200L)));
+        run(bankA.startFlow(new IssueFlow.InitiatorFlow("bob", startDate, 300L)));
+
+        List<PortfolioTotal> alice = run(bankA.startFlow(new PortfolioSummaryFlow("alice")));
+        assertEquals(1, alice.size());
+        assertEquals(2, alice.get(0).getCount());
+
+        AssetSavingState saving = issued.getTx().outputsOfType(AssetSavingState.class).get(0);
+        run(bankA.startFlow(new CancelFlow.InitiatorFlow(saving.getLinearId(), "alice")));
+
+        alice = run(bankA.startFlow(new PortfolioSummaryFlow("alice")));
+        assertEquals(1, alice.get(0).getCount());
+        assertEquals("USD", alice.get(0).getCurrency());
+
+        List<PortfolioTotal> banks = run(bankA.startFlow(new PortfolioSummaryFlow()));
+        assertEquals(1, banks.size());
+        assertEquals(bankA.getInfo().getLegalIdentities().get(0).getName().toString(), banks.get(0).getName());
+        assertEquals(2, banks.get(0).getCount());
+    }
+
+    private <T> T run(CordaFuture<T> future) throws Exception {
+        network.runNetwork();
+        return future.get();
+    }
+}
@@ -1,4 +1,109 @@
 package com.assetsaving;
 
+import com.assetsaving.flows.IssueFlow;
+import com.assetsaving.flows.OnboardAccountsFlow;
+import com.assetsaving.flows.TransferFlow;
+import com.assetsaving.flows.services.AccountCacheService;
+import com.assetsaving.flows.services.AccountKeyPool;
+import com.assetsaving.flows.utilities.GenerateAccountKeysFlow;
+import com.assetsaving.states.AssetSavingState;
+import com.google.common.collect.ImmutableList;
+import com.r3.corda.lib.accounts.contracts.states.AccountInfo;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class TransferFlowTest {
+
+    // Every round of runNetwork(1) delivers at most one message to each of the three nodes, so this
+    // also caps the messages the transfer exchanges before it completes at three times as many.
+    private static final int MAX_TRANSFER_ROUNDS = 100;
+
+    private MockNetwork network;
+    private StartedMockNode bankA;
+    private StartedMockNode bankB;
+    private Party partyA;
+    private Party partyB;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(new MockNetworkParameters().withCordappsForAllNodes(ImmutableList.of(
+                TestCordapp.findCordapp("com.assetsaving.contracts"),
+                TestCordapp.findCordapp("com.assetsaving.flows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.contracts"),
+                TestCordapp.findCordapp("com.r3.corda.lib.accounts.workflows"),
+                TestCordapp.findCordapp("com.r3.corda.lib.ci.workflows"))));
+        bankA = network.createPartyNode(new CordaX500Name("BankA", "London", "GB"));
+        bankB = network.createPartyNode(new CordaX500Name("BankB", "New York", "US"));
+        partyA = bankA.getInfo().getLegalIdentities().get(0);
+        partyB = bankB.getInfo().getLegalIdentities().get(0);
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void transferUsesOneSessionPerHost() throws Exception {
+        String startDate = LocalDate.now().plusDays(30).toString();
+        SignedTransaction issued = run(bankA.startFlow(new IssueFlow.InitiatorFlow("alice", startDate, 100L)));
+        AssetSavingState saving = issued.getTx().outputsOfType(AssetSavingState.class).get(0);
+
+        // BankB hosts the new customer and has shared it, and BankA holds spare keys for it, so the
+        // transfer itself needs neither a kick nor a key request.
+        run(bankB.startFlow(new OnboardAccountsFlow.InitiatorFlow(Collections.singletonList("bob"),
+                Collections.singletonList(partyA), 1, 0)));
+        AccountInfo bob = bankA.getServices().cordaService(AccountCacheService.class)
+                .accountByName("bob", partyB).getState().getData();
+        List<AnonymousParty> keys = run(bankA.startFlow(new GenerateAccountKeysFlow(bob, 10)));
+        bankA.getServices().cordaService(AccountKeyPool.class).offer(bob, keys);
+
+        // Every session the transfer opens starts one Responder on the node it is opened with, and
+        // the node reports each one it starts.
+        Set<StateMachineRunId> respondersOnA = new HashSet<>();
+        Set<StateMachineRunId> respondersOnB = new HashSet<>();
+        bankA.registerInitiatedFlow(TransferFlow.Responder.class).subscribe(flow -> respondersOnA.add(flow.getRunId()));
+        bankB.registerInitiatedFlow(TransferFlow.Responder.class).subscribe(flow -> respondersOnB.add(flow.getRunId()));
+        CordaFuture<SignedTransaction> transfer = bankA.startFlow(new TransferFlow.InitiatorFlow(saving.getLinearId(),
+                partyB, "alice", "bob", startDate, 200L));
+        int rounds = 0;
+        while (!transfer.isDone() && rounds < MAX_TRANSFER_ROUNDS) {
+            network.runNetwork(1);
+            rounds++;
+        }
+        assertTrue("The transfer took more than " + MAX_TRANSFER_ROUNDS + " message rounds", transfer.isDone());
+        SignedTransaction transferred = run(transfer);
+        assertEquals(partyB, transferred.getTx().outputsOfType(AssetSavingState.class).get(0).getBank());
+
+        // The old customer is hosted by BankA, which signs for it without a session to itself, and
+        // BankB hosts both of its keys, so it needs only one.
+        assertEquals(0, respondersOnA.size());
+        assertEquals(1, respondersOnB.size());
+    }
+
+    private <T> T run(CordaFuture<T> future) throws Exception {
+        network.runNetwork();
+        return future.get();
+    }
 }
@@ -0,0 +1,199 @@
+package com.assetsaving;
+
+import com.assetsaving.contracts.AssetSavingContract;
+import com.assetsaving.flows.services.PortfolioService;
+import com.assetsaving.flows.utilities.PortfolioTotal;
+import com.assetsaving.flows.utilities.UuidTotals;
+import com.assetsaving.states.AssetSavingState;
+import net.corda.core.contracts.Amount;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.IdentityService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.ServiceLifecycleObserver;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.PageSpecification;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UuidTotalsTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(UuidTotalsTest.class);
+
+    private static final int ACCOUNTS = 100_000;
+    // The table alone is 28 bytes and a bit per slot at a load between 0.4 and 0.8.
+    private static final long MAX_BYTES_PER_ACCOUNT = 72;
+
+    @Test
+    public void keepsTotalsPerUuid() {
+        UuidTotals totals = new UuidTotals();
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+
+        totals.add(alice, 1, 100);
+        totals.add(alice, 1, 50);
+        totals.add(bob, 1, 10);
+        totals.add(alice, -1, -100);
+
+        assertEquals(1, totals.count(alice));
+        assertEquals(50, totals.sum(alice));
+        assertEquals(1, totals.count(bob));
+        assertEquals(0, totals.count(UUID.randomUUID()));
+        assertEquals(2, totals.size());
+    }
+
+    @Test
+    public void negativeCountsKeepTheirEntries() {
+        UuidTotals totals = new UuidTotals();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(UUID.randomUUID());
+            totals.add(ids.get(i), 1, i);
+        }
+        // A consumption seen before its production.
+        UUID early = UUID.randomUUID();
+        totals.add(early, -1, -5);
+        for (int i = 1000; i < 2000; i++) {
+            ids.add(UUID.randomUUID());
+            totals.add(ids.get(i), 1, i);
+        }
+
+        assertEquals(-1, totals.count(early));
+        totals.add(early, 1, 5);
+        assertEquals(0, totals.count(early));
+        assertEquals(0, totals.sum(early));
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(1, totals.count(ids.get(i)));
+            assertEquals(i, totals.sum(ids.get(i)));
+        }
+        assertEquals(ids.size() + 1, totals.size());
+    }
+
+    @Test
+    public void memoryPer100kAccounts() {
+        List<UUID> ids = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ids.add(UUID.randomUUID());
+        }
+
+        long before = usedMemory();
+        UuidTotals totals = new UuidTotals();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            totals.add(ids.get(i), 1, i);
+        }
+        long measured = usedMemory() - before;
+        logger.info("UuidTotals of {} accounts: table {} bytes, measured heap growth {} bytes",
+                ACCOUNTS, totals.tableBytes(), measured);
+
+        for (int i = 0; i < ACCOUNTS; i += 997) {
+            assertEquals(i, totals.sum(ids.get(i)));
+        }
+        assertEquals(ACCOUNTS, totals.size());
+
+        assertTrue("The table of " + ACCOUNTS + " accounts takes " + totals.tableBytes() + " bytes",
+                totals.tableBytes() <= MAX_BYTES_PER_ACCOUNT * ACCOUNTS);
+        assertTrue("The totals of " + ACCOUNTS + " accounts grew the heap by " + measured + " bytes",
+                measured <= MAX_BYTES_PER_ACCOUNT * ACCOUNTS);
+    }
+
+    @Test
+    public void portfolioServiceMemoryPer100kAccounts() {
+        // One saving per account, loaded through the service's own paged vault load. The pages are
+        // generated as they are asked for, so only what the service keeps is still on the heap after.
+        UUID[] accountIds = new UUID[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds[i] = UUID.randomUUID();
+        }
+        Party bank = new Party(new CordaX500Name("BankA", "London", "GB"), Crypto.generateKeyPair().getPublic());
+        AnonymousParty customer = new AnonymousParty(Crypto.generateKeyPair().getPublic());
+        SecureHash transactionId = SecureHash.randomSHA256();
+        Currency usd = Currency.getInstance("USD");
+        Date startDate = new Date();
+
+        VaultService vault = proxy(VaultService.class, (method, args) -> {
+            if (method.equals("getUpdates")) {
+                return Observable.never();
+            }
+            PageSpecification paging = (PageSpecification) args[2];
+            int from = (paging.getPageNumber() - 1) * paging.getPageSize();
+            List<StateAndRef<AssetSavingState>> states = new ArrayList<>();
+            for (int i = from; i < Math.min(from + paging.getPageSize(), ACCOUNTS); i++) {
+                AssetSavingState state = new AssetSavingState(bank, customer, startDate, new Amount<>(100, usd),
+                        new UniqueIdentifier(), new Amount<>(i, usd), 0);
+                states.add(new StateAndRef<>(new TransactionState<>(state, AssetSavingContract.ID, bank),
+                        new StateRef(transactionId, i)));
+            }
+            return new Vault.Page<>(states, Collections.emptyList(), ACCOUNTS, Vault.StateStatus.UNCONSUMED,
+                    Collections.emptyList());
+        });
+        // The service resolves the account of every state in load order, so the n-th lookup is the n-th account.
+        int[] resolved = {0};
+        IdentityService identities = proxy(IdentityService.class, (method, args) -> accountIds[resolved[0]++]);
+        List<ServiceLifecycleObserver> observers = new ArrayList<>();
+        AppServiceHub serviceHub = proxy(AppServiceHub.class, (method, args) -> {
+            switch (method) {
+                case "register":
+                    return observers.add((ServiceLifecycleObserver) args[args.length - 1]);
+                case "getVaultService":
+                    return vault;
+                case "getIdentityService":
+                    return identities;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+
+        long before = usedMemory();
+        PortfolioService portfolio = new PortfolioService(serviceHub);
+        for (ServiceLifecycleObserver observer : observers) {
+            observer.onServiceLifecycleEvent(ServiceLifecycleEvent.BEFORE_STATE_MACHINE_START);
+        }
+        long measured = usedMemory() - before;
+        logger.info("PortfolioService with {} accounts: measured heap growth {} bytes", ACCOUNTS, measured);
+
+        assertEquals(ACCOUNTS, resolved[0]);
+        for (int i = 0; i < ACCOUNTS; i += 997) {
+            List<PortfolioTotal> totals = portfolio.accountTotals(accountIds[i], "customer" + i);
+            assertEquals(1, totals.size());
+            assertEquals(i, totals.get(0).getBalance());
+        }
+        assertEquals(ACCOUNTS, portfolio.bankTotals().get(0).getCount());
+        assertTrue("The PortfolioService of " + ACCOUNTS + " accounts grew the heap by " + measured + " bytes",
+                measured <= MAX_BYTES_PER_ACCOUNT * ACCOUNTS);
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> method.getDeclaringClass() == Object.class
+                        ? method.invoke(handler, args) : handler.invoke(method.getName(), args)));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}